@@ -29,6 +29,7 @@ import com.badlogic.gdx.InputMultiplexer;
 import com.badlogic.gdx.InputProcessor;
 import com.badlogic.gdx.backends.lwjgl.LwjglApplication;
 import com.badlogic.gdx.backends.lwjgl.LwjglApplicationConfiguration;
+import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.g2d.Sprite;
@@ -36,6 +37,7 @@ import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.utils.TimeUtils;
+import com.bitfire.utils.ShaderBundle;
 import com.bitfire.utils.ShaderLoader;
 
 public class PostProcessingDemo implements ApplicationListener, InputProcessor {
@@ -98,6 +100,13 @@ public class PostProcessingDemo implements ApplicationListener, InputProcessor {
 	@Override
 	public void create() {
 		ShaderLoader.BasePath = "shaders/";
+
+		// use the packed shader sources, if the library has been built with them
+		FileHandle bundle = Gdx.files.internal( "shaders/shaders.bundle" );
+		if( bundle.exists() ) {
+			ShaderLoader.Bundle = ShaderBundle.load( bundle, true );
+		}
+
 		plex = new InputMultiplexer();
 		plex.addProcessor( this );
 		Gdx.input.setInputProcessor( plex );
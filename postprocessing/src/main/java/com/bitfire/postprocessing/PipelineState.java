@@ -1,6 +1,7 @@
 package com.bitfire.postprocessing;
 
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.GL20;
@@ -16,9 +17,11 @@ import com.badlogic.gdx.utils.Disposable;
 public final class PipelineState implements Disposable {
 
 	private ByteBuffer byteBuffer;
+	private IntBuffer intBuffer;
 
 	protected PipelineState() {
 		byteBuffer = BufferUtils.newByteBuffer( 32 );
+		intBuffer = BufferUtils.newIntBuffer( 16 );
 	}
 
 	public boolean isEnabled( int pname ) {
@@ -37,6 +40,21 @@ public final class PipelineState implements Disposable {
 		return ret;
 	}
 
+	/** Stores the source and destination RGB factors, then the alpha ones, of the current blend function. */
+	public void getBlendFunc( int[] factors ) {
+		factors[0] = getInteger( GL20.GL_BLEND_SRC_RGB );
+		factors[1] = getInteger( GL20.GL_BLEND_DST_RGB );
+		factors[2] = getInteger( GL20.GL_BLEND_SRC_ALPHA );
+		factors[3] = getInteger( GL20.GL_BLEND_DST_ALPHA );
+	}
+
+	private int getInteger( int pname ) {
+		Gdx.gl20.glGetIntegerv( pname, intBuffer );
+		int ret = intBuffer.get( 0 );
+		intBuffer.clear();
+		return ret;
+	}
+
 	@Override
 	public void dispose() {
 	}
@@ -26,7 +26,10 @@ import com.badlogic.gdx.graphics.glutils.FrameBuffer;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
+import com.bitfire.postprocessing.utils.FrameBufferPool;
+import com.bitfire.postprocessing.utils.FrameResources;
 import com.bitfire.postprocessing.utils.PingPongBuffer;
+import com.bitfire.postprocessing.utils.TextureBinder;
 import com.bitfire.utils.ItemsManager;
 
 /**
@@ -48,6 +51,8 @@ public final class PostProcessor implements Disposable {
 	private TextureWrap compositeWrapV;
 	private final ItemsManager<PostProcessorEffect> effectsManager = new ItemsManager<PostProcessorEffect>();
 	private static final Array<PingPongBuffer> buffers = new Array<PingPongBuffer>( 5 );
+	private static final FrameBufferPool framebufferPool = new FrameBufferPool();
+	private static final FrameResources frameResources = new FrameResources();
 	private final Color clearColor = Color.CLEAR;
 	private int clearBits = GL10.GL_COLOR_BUFFER_BIT;
 	private float clearDepth = 1f;
@@ -143,6 +148,22 @@ public final class PostProcessor implements Disposable {
 		return buffer;
 	}
 
+	/**
+	 * Returns the pool of transient framebuffers shared by the effects, the framebuffers it creates are released when
+	 * the PostProcessor is disposed.
+	 */
+	public static FrameBufferPool getFramebufferPool() {
+		return framebufferPool;
+	}
+
+	/**
+	 * Returns the registry of the named textures published by the effects during the current frame, effects can use it
+	 * to consume the intermediate results of the ones preceding them in the chain.
+	 */
+	public static FrameResources getFrameResources() {
+		return frameResources;
+	}
+
 	/**
 	 * Provides a way to query the pipeline for the most used states
 	 */
@@ -156,6 +177,20 @@ public final class PostProcessor implements Disposable {
 		return false;
 	}
 
+	/**
+	 * Stores the current blend function into the specified array, as the source and destination RGB factors followed by
+	 * the alpha ones, so that it can be restored later via glBlendFuncSeparate: returns false, leaving the array
+	 * untouched, if state queries are disabled.
+	 */
+	public static boolean getBlendFunc( int[] factors ) {
+		if( EnableQueryStates ) {
+			pipelineState.getBlendFunc( factors );
+			return true;
+		}
+
+		return false;
+	}
+
 	/**
 	 * Sets the viewport to be restored, if null is specified then the viewport will NOT be restored at all.
 	 * 
@@ -180,6 +215,8 @@ public final class PostProcessor implements Disposable {
 		}
 
 		buffers.clear();
+		framebufferPool.dispose();
+		frameResources.clear();
 
 		if( enabledEffects != null ) {
 			enabledEffects.clear();
@@ -273,12 +310,15 @@ public final class PostProcessor implements Disposable {
 		clearDepth = depth;
 	}
 
+	/** Sets the texture wrap mode of the internal buffers, OpenGL will be touched only if the wrap mode is changing. */
 	public void setBufferTextureWrap( TextureWrap u, TextureWrap v ) {
 		compositeWrapU = u;
 		compositeWrapV = v;
 
-		composite.texture1.setWrap( compositeWrapU, compositeWrapV );
-		composite.texture2.setWrap( compositeWrapU, compositeWrapV );
+		// we are being called from the outside, texture units could be dirty
+		TextureBinder.invalidate();
+		TextureBinder.setWrap( composite.texture1, compositeWrapU, compositeWrapV );
+		TextureBinder.setWrap( composite.texture2, compositeWrapU, compositeWrapV );
 	}
 
 	/**
@@ -372,8 +412,9 @@ public final class PostProcessor implements Disposable {
 	 * the OpenGL context is lost.
 	 */
 	public void rebind() {
-		composite.texture1.setWrap( compositeWrapU, compositeWrapV );
-		composite.texture2.setWrap( compositeWrapU, compositeWrapV );
+		TextureBinder.invalidate();
+		TextureBinder.setWrap( composite.texture1, compositeWrapU, compositeWrapV, true );
+		TextureBinder.setWrap( composite.texture2, compositeWrapU, compositeWrapV, true );
 
 		for( int i = 0; i < buffers.size; i++ ) {
 			buffers.get( i ).rebind();
@@ -396,12 +437,18 @@ public final class PostProcessor implements Disposable {
 			return;
 		}
 
+		// textures published during the previous frame are stale
+		frameResources.clear();
+
 		// Array<PostProcessorEffect> items = manager.items;
 		Array<PostProcessorEffect> items = enabledEffects;
 
 		int count = items.size;
 		if( count > 0 ) {
 
+			// anything could have been bound while capturing the scene
+			TextureBinder.invalidate();
+
 			Gdx.gl.glDisable( GL20.GL_CULL_FACE );
 			Gdx.gl.glDisable( GL20.GL_DEPTH_TEST );
 
@@ -422,6 +469,9 @@ public final class PostProcessor implements Disposable {
 
 			if( listener != null && dest == null ) {
 				listener.beforeRenderToScreen();
+
+				// the listener could have touched the texture units
+				TextureBinder.invalidate();
 			}
 
 			// render with null dest (to screen)
@@ -429,6 +479,9 @@ public final class PostProcessor implements Disposable {
 
 			// ensure default texture unit #0 is active
 			Gdx.gl.glActiveTexture( GL20.GL_TEXTURE0 );
+
+			// the caller is going to change texture bindings on its own
+			TextureBinder.invalidate();
 		} else {
 			Gdx.app.log( "PostProcessor", "No post-processor effects enabled, aborting render" );
 		}
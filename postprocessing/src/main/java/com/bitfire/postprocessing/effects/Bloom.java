@@ -18,17 +18,35 @@ package com.bitfire.postprocessing.effects;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap.Format;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.bitfire.postprocessing.PostProcessor;
 import com.bitfire.postprocessing.PostProcessorEffect;
+import com.bitfire.postprocessing.filters.BloomPyramid;
 import com.bitfire.postprocessing.filters.Blur;
 import com.bitfire.postprocessing.filters.Blur.BlurType;
 import com.bitfire.postprocessing.filters.Combine;
+import com.bitfire.postprocessing.filters.Emission;
+import com.bitfire.postprocessing.filters.Mix;
+import com.bitfire.postprocessing.filters.Streak;
 import com.bitfire.postprocessing.filters.Threshold;
+import com.bitfire.postprocessing.utils.FrameResources;
 import com.bitfire.postprocessing.utils.PingPongBuffer;
+import com.bitfire.utils.ShaderWarmup;
 
 public final class Bloom extends PostProcessorEffect {
+	/** Where the areas to be bloomed are extracted from. */
+	public enum Source {
+		/** The scene pixels brighter than the threshold. */
+		Threshold,
+		/** The emission buffer specified via {@link Bloom#setEmissionMask(Texture)}, as it is. */
+		EmissionMask,
+		/** The scene colors weighted by its alpha channel, the composite buffer shall have one. */
+		CompositeAlpha
+	}
+
 	public static class Settings {
 		public final String name;
 
@@ -80,30 +98,108 @@ public final class Bloom extends PostProcessorEffect {
 	private PingPongBuffer pingPongBuffer;
 
 	private Blur blur;
+	private BloomPyramid pyramid = null;
+	private boolean usePyramid = false;
+	private Streak streak = null;
+	private boolean useStreaks = false;
+	private int streakPasses = 3;
+	private float streakAttenuation = 0.8f;
 	private Threshold threshold;
+	private Emission emission = null;
+	private Source source = Source.Threshold;
+	private Texture emissionMask = null;
+	private Texture hdrSource = null;
+	private float emissionIntensity = 1f;
+	private boolean downsampleSource = false;
 	private Combine combine;
 
 	private Settings settings;
 
 	private boolean blending = false;
 	private int sfactor, dfactor;
+	private final boolean rgbm;
+
+	// temporal amortization
+	private int updateInterval = 1;
+	private int framesToUpdate = 0;
+	private float persistence = 0;
+	// the previous and the current history, mixed by a shader to leave the blending state alone
+	private FrameBuffer[] history = null;
+	private int historyCurrent = 0;
+	private boolean historyValid = false;
+	private Mix mix = null;
+
+	private String publishedName = null;
+	private final String[] publishedLevelNames = new String[ BloomPyramid.MaxLevels ];
 
 	public Bloom( int fboWidth, int fboHeight ) {
-		pingPongBuffer = PostProcessor.newPingPongBuffer( fboWidth, fboHeight, PostProcessor.getFramebufferFormat(), false );
+		this( fboWidth, fboHeight, false );
+	}
 
-		blur = new Blur( fboWidth, fboHeight );
-		threshold = new Threshold();
-		combine = new Combine();
+	/**
+	 * Creates a new Bloom effect: if encodeRgbm is true the bright-pass and blur results will be stored as RGBM into
+	 * 8-bit buffers, preserving the values that exceed the [0,1] range without requiring floating point framebuffers.
+	 * 
+	 * RGBM only pays off when the bright-pass gets such values: the composite buffer the effect is rendering from is
+	 * usually 8-bit and already clamped, so the threshold should read from a floating point scene via
+	 * {@link #setHdrSource(Texture)}, or the emission should be scaled up via {@link #setEmissionIntensity(float)}.
+	 * Otherwise it only costs extra work and rules out {@link #setBlurPersistence(float)}.
+	 */
+	public Bloom( int fboWidth, int fboHeight, boolean encodeRgbm ) {
+		rgbm = encodeRgbm;
+
+		// RGBM needs the alpha channel to store the multiplier
+		Format format = rgbm ? Format.RGBA8888 : PostProcessor.getFramebufferFormat();
+		pingPongBuffer = PostProcessor.newPingPongBuffer( fboWidth, fboHeight, format, false );
+
+		blur = new Blur( fboWidth, fboHeight, rgbm );
+		threshold = new Threshold( rgbm );
+		combine = new Combine( rgbm );
 
 		setSettings( new Settings( "default", 2, 0.277f, 1f, .85f, 1.1f, .85f ) );
 	}
 
+	/** Enqueues the programs needed by a Bloom effect constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean encodeRgbm ) {
+		Threshold.enqueueShaders( warmup, encodeRgbm );
+		Blur.enqueueShaders( warmup, encodeRgbm );
+		Combine.enqueueShaders( warmup, encodeRgbm );
+		BloomPyramid.enqueueShaders( warmup, encodeRgbm );
+		Streak.enqueueShaders( warmup, encodeRgbm );
+
+		// the blur history is only available on non-RGBM buffers
+		if( !encodeRgbm ) {
+			Mix.enqueueShaders( warmup );
+		}
+	}
+
+	/** Enqueues the programs needed by a Bloom effect constructed with the same parameters, using the specified source. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean encodeRgbm, Source source ) {
+		enqueueShaders( warmup, encodeRgbm );
+		if( source != Source.Threshold ) {
+			Emission.enqueueShaders( warmup, source == Source.CompositeAlpha, encodeRgbm );
+		}
+	}
+
 	@Override
 	public void dispose() {
 		combine.dispose();
 		threshold.dispose();
+		if( emission != null ) {
+			emission.dispose();
+		}
+
 		blur.dispose();
+		if( pyramid != null ) {
+			pyramid.dispose();
+		}
+
+		if( streak != null ) {
+			streak.dispose();
+		}
+
 		pingPongBuffer.dispose();
+		disposeHistory();
 	}
 
 	public void setBaseIntesity( float intensity ) {
@@ -126,6 +222,98 @@ public final class Bloom extends PostProcessorEffect {
 		threshold.setTreshold( gamma );
 	}
 
+	/** Sets the softness of the threshold in the [0,1] range, see {@link Threshold#setSoftKnee(float)}. */
+	public void setThresholdKnee( float softness ) {
+		threshold.setSoftKnee( softness );
+	}
+
+	/**
+	 * Enables or disables averaging the whole footprint of each bloom texel while thresholding, avoiding the aliasing
+	 * and flickering caused by thresholding into a smaller buffer: this produces a stable input for the blur, thus less
+	 * blur passes are usually needed to hide artifacts.
+	 */
+	public void setThresholdDownsampling( boolean enabled ) {
+		downsampleSource = enabled;
+		if( enabled ) {
+			threshold.enableDownsampling( pingPongBuffer.width, pingPongBuffer.height );
+		} else {
+			threshold.disableDownsampling();
+		}
+
+		if( emission != null ) {
+			setEmissionDownsampling();
+		}
+	}
+
+	/**
+	 * Sets where the areas to be bloomed are extracted from: using an emission mask or the alpha channel of the scene
+	 * gives precise control over what glows, no matter how bright it is, and skips thresholding the scene. Downsampling
+	 * applies to any source, see {@link #setThresholdDownsampling(boolean)}.
+	 */
+	public void setSource( Source source ) {
+		this.source = source;
+		if( source == Source.Threshold ) {
+			return;
+		}
+
+		boolean alphaMask = (source == Source.CompositeAlpha);
+		if( emission == null || emission.isAlphaMask() != alphaMask ) {
+			if( emission != null ) {
+				emission.dispose();
+			}
+
+			emission = new Emission( alphaMask, rgbm );
+			emission.setIntensity( emissionIntensity );
+			setEmissionDownsampling();
+		}
+	}
+
+	/**
+	 * Sets the texture the bright-pass reads from when using the {@link Source#Threshold} source, in place of the
+	 * composite buffer: this is meant to be a floating point rendering of the scene, holding the values exceeding the
+	 * [0,1] range that RGBM encoding can preserve. Null reverts to the composite buffer.
+	 */
+	public void setHdrSource( Texture source ) {
+		hdrSource = source;
+	}
+
+	public Texture getHdrSource() {
+		return hdrSource;
+	}
+
+	/** Sets the emission buffer to be bloomed when using the {@link Source#EmissionMask} source. */
+	public void setEmissionMask( Texture mask ) {
+		emissionMask = mask;
+	}
+
+	/** Sets the intensity the emission is scaled by, when not using the {@link Source#Threshold} source. */
+	public void setEmissionIntensity( float intensity ) {
+		emissionIntensity = intensity;
+		if( emission != null ) {
+			emission.setIntensity( intensity );
+		}
+	}
+
+	private void setEmissionDownsampling() {
+		if( downsampleSource ) {
+			emission.enableDownsampling( pingPongBuffer.width, pingPongBuffer.height );
+		} else {
+			emission.disableDownsampling();
+		}
+	}
+
+	public Source getSource() {
+		return source;
+	}
+
+	public Texture getEmissionMask() {
+		return emissionMask;
+	}
+
+	public float getEmissionIntensity() {
+		return emissionIntensity;
+	}
+
 	public void enableBlending( int sfactor, int dfactor ) {
 		this.blending = true;
 		this.sfactor = sfactor;
@@ -136,6 +324,167 @@ public final class Bloom extends PostProcessorEffect {
 		this.blending = false;
 	}
 
+	/**
+	 * Enables the multi-level glow, replacing the blur: the thresholded scene is downsampled through the specified number
+	 * of levels and accumulated back, each level contributing the same amount unless changed via
+	 * {@link #setPyramidWeight(int, float)}. Specifying zero levels disables it, going back to the blur.
+	 */
+	public void setPyramidLevels( int levels ) {
+		usePyramid = (levels > 0);
+		if( usePyramid ) {
+			if( pyramid == null ) {
+				pyramid = new BloomPyramid( pingPongBuffer.width, pingPongBuffer.height, rgbm );
+				pyramid.setRetainLevels( publishedName != null );
+			}
+
+			pyramid.setLevels( levels );
+		}
+	}
+
+	/** Sets the weight of the specified level of the multi-level glow, level 0 being the largest. */
+	public void setPyramidWeight( int level, float weight ) {
+		if( pyramid != null ) {
+			pyramid.setWeight( level, weight );
+		}
+	}
+
+	/** Returns the number of levels of the multi-level glow, or zero if it's not enabled. */
+	public int getPyramidLevels() {
+		return usePyramid ? pyramid.getLevels() : 0;
+	}
+
+	/**
+	 * Adds horizontal streaks to the glow, as produced by anamorphic lenses: the blurred bright-pass is squashed
+	 * vertically, blurred by a chain of wide horizontal passes and stretched back, see {@link Streak}. Specifying zero
+	 * intensity disables them.
+	 */
+	public void setStreakIntensity( float intensity ) {
+		useStreaks = (intensity > 0);
+		if( useStreaks ) {
+			if( streak == null ) {
+				streak = new Streak( pingPongBuffer.width, pingPongBuffer.height, rgbm );
+				streak.setPasses( streakPasses );
+				streak.setAttenuation( streakAttenuation );
+			}
+
+			streak.setIntensity( intensity );
+		}
+	}
+
+	/**
+	 * Sets the number of horizontal passes of the streaks, the length growing exponentially with it. The setting is
+	 * retained while streaks are disabled.
+	 */
+	public void setStreakPasses( int passes ) {
+		streakPasses = Math.max( 1, passes );
+		if( streak != null ) {
+			streak.setPasses( streakPasses );
+		}
+	}
+
+	/**
+	 * Sets how quickly, in the (0,1] range, the streaks fade away from their source. The setting is retained while
+	 * streaks are disabled.
+	 */
+	public void setStreakAttenuation( float attenuation ) {
+		streakAttenuation = attenuation;
+		if( streak != null ) {
+			streak.setAttenuation( attenuation );
+		}
+	}
+
+	public int getStreakPasses() {
+		return streakPasses;
+	}
+
+	public float getStreakAttenuation() {
+		return streakAttenuation;
+	}
+
+	/** Returns the intensity of the streaks, or zero if they are not enabled. */
+	public float getStreakIntensity() {
+		return useStreaks ? streak.getIntensity() : 0;
+	}
+
+	/**
+	 * Publishes the blurred bright-pass result to the {@link PostProcessor#getFrameResources()} registry with the
+	 * specified name, so that the effects following this one can reuse it: if the multi-level glow is enabled, the
+	 * downsampled levels are published as well, named after this name followed by "Level" and the level index, eg.
+	 * "bloomLevel0" for the largest one. The result is RGBM-encoded if {@link #isRgbmEncoded()} is true. Specifying null
+	 * stops publishing.
+	 */
+	public void setPublishedName( String name ) {
+		publishedName = name;
+		for( int i = 0; i < publishedLevelNames.length; i++ ) {
+			publishedLevelNames[i] = (name != null) ? name + "Level" + i : null;
+		}
+
+		if( pyramid != null ) {
+			pyramid.setRetainLevels( name != null );
+		}
+	}
+
+	public String getPublishedName() {
+		return publishedName;
+	}
+
+	/**
+	 * Sets the number of frames between updates of the blurred bright-pass: in between updates the previous result will
+	 * be reused, avoiding to pay for the threshold and blur passes every frame. This is well suited for soft and slowly
+	 * changing glows, possibly paired with {@link #setBlurPersistence(float)} to hide the discontinuities.
+	 */
+	public void setBlurUpdateInterval( int frames ) {
+		updateInterval = Math.max( 1, frames );
+		framesToUpdate = 0;
+	}
+
+	/**
+	 * Sets the amount, in the [0,1) range, of the previous result that is kept every time the blurred bright-pass is
+	 * updated: the updates are mixed into a history buffer, smoothing the glow over time at the cost of some lag. Zero
+	 * disables the history buffer. Mixing is not supported on RGBM-encoded buffers.
+	 * 
+	 * @throws GdxRuntimeException if the effect is RGBM-encoded and persistence is greater than zero.
+	 */
+	public void setBlurPersistence( float persistence ) {
+		if( persistence > 0 && rgbm ) {
+			throw new GdxRuntimeException( "Mixing the blur history is not supported on RGBM-encoded buffers" );
+		}
+
+		this.persistence = Math.min( persistence, 0.99f );
+		if( this.persistence > 0 ) {
+			if( history == null ) {
+				history = new FrameBuffer[ 2 ];
+				for( int i = 0; i < history.length; i++ ) {
+					history[i] = new FrameBuffer( PostProcessor.getFramebufferFormat(), pingPongBuffer.width,
+							pingPongBuffer.height, false );
+				}
+
+				mix = new Mix();
+				historyValid = false;
+			}
+		} else {
+			disposeHistory();
+		}
+	}
+
+	public int getBlurUpdateInterval() {
+		return updateInterval;
+	}
+
+	public float getBlurPersistence() {
+		return persistence;
+	}
+
+	private void disposeHistory() {
+		if( history != null ) {
+			history[0].dispose();
+			history[1].dispose();
+			mix.dispose();
+			history = null;
+			mix = null;
+		}
+	}
+
 	public void setBlurType( BlurType type ) {
 		blur.setType( type );
 	}
@@ -170,6 +519,14 @@ public final class Bloom extends PostProcessorEffect {
 		return threshold.getThreshold();
 	}
 
+	public float getThresholdKnee() {
+		return threshold.getSoftKnee();
+	}
+
+	public boolean isThresholdDownsamplingEnabled() {
+		return threshold.isDownsamplingEnabled();
+	}
+
 	public float getBaseIntensity() {
 		return combine.getSource1Intensity();
 	}
@@ -186,6 +543,10 @@ public final class Bloom extends PostProcessorEffect {
 		return combine.getSource2Saturation();
 	}
 
+	public boolean isRgbmEncoded() {
+		return rgbm;
+	}
+
 	public boolean isBlendingEnabled() {
 		return blending;
 	}
@@ -221,16 +582,55 @@ public final class Bloom extends PostProcessorEffect {
 		boolean blendingWasEnabled = PostProcessor.isStateEnabled( GL20.GL_BLEND );
 		Gdx.gl.glDisable( GL20.GL_BLEND );
 
-		pingPongBuffer.begin();
-		{
-			// threshold / high-pass filter
-			// only areas with pixels >= threshold are blit to smaller fbo
-			threshold.setInput( texsrc ).setOutput( pingPongBuffer.getSourceBuffer() ).render();
+		boolean useHistory = (history != null);
+		boolean update = (framesToUpdate == 0) || (useHistory && !historyValid);
+		framesToUpdate = (update ? updateInterval : framesToUpdate) - 1;
+
+		if( update ) {
+			pingPongBuffer.begin();
+			{
+				switch( source ) {
+				case EmissionMask:
+					if( emissionMask == null ) {
+						throw new GdxRuntimeException( "No emission mask has been specified" );
+					}
+
+					emission.setInput( emissionMask ).setOutput( pingPongBuffer.getSourceBuffer() ).render();
+					break;
+				case CompositeAlpha:
+					emission.setInput( texsrc ).setOutput( pingPongBuffer.getSourceBuffer() ).render();
+					break;
+				default:
+					// threshold / high-pass filter
+					// only areas with pixels >= threshold are blit to smaller fbo
+					Texture bright = (hdrSource != null ? hdrSource : texsrc);
+					threshold.setInput( bright ).setOutput( pingPongBuffer.getSourceBuffer() ).render();
+					break;
+				}
+
+				// blur pass
+				if( usePyramid ) {
+					pyramid.render( pingPongBuffer );
+				} else {
+					blur.render( pingPongBuffer );
+				}
+
+				if( useStreaks ) {
+					streak.render( pingPongBuffer );
+				}
+			}
+			pingPongBuffer.end();
+
+			if( useHistory ) {
+				updateHistory();
+			}
+		}
 
-			// blur pass
-			blur.render( pingPongBuffer );
+		Texture bloom = useHistory ? history[historyCurrent].getColorBufferTexture() : pingPongBuffer.getResultTexture();
+
+		if( publishedName != null ) {
+			publish( bloom );
 		}
-		pingPongBuffer.end();
 
 		if( blending || blendingWasEnabled ) {
 			Gdx.gl.glEnable( GL20.GL_BLEND );
@@ -244,14 +644,56 @@ public final class Bloom extends PostProcessorEffect {
 
 		// mix original scene and blurred threshold, modulate via
 		// set(Base|Bloom)(Saturation|Intensity)
-		combine.setOutput( dest ).setInput( texsrc, pingPongBuffer.getResultTexture() ).render();
+		combine.setOutput( dest ).setInput( texsrc, bloom ).render();
+	}
+
+	// mixes the new result with the previous ones into the other history buffer, or just copies it if there are none
+	private void updateHistory() {
+		Texture result = pingPongBuffer.getResultTexture();
+		Texture previous = historyValid ? history[historyCurrent].getColorBufferTexture() : result;
+
+		historyCurrent = 1 - historyCurrent;
+		mix.setAmount( historyValid ? 1f - persistence : 1f );
+		mix.setInput( previous, result ).setOutput( history[historyCurrent] ).render();
+
+		historyValid = true;
+	}
+
+	private void publish( Texture bloom ) {
+		FrameResources resources = PostProcessor.getFrameResources();
+		resources.publish( publishedName, bloom );
+
+		if( usePyramid ) {
+			for( int i = 0; i < pyramid.getLevels(); i++ ) {
+				resources.publish( publishedLevelNames[i], pyramid.getLevelTexture( i ) );
+			}
+		}
 	}
 
 	@Override
 	public void rebind() {
 		blur.rebind();
+		if( pyramid != null ) {
+			pyramid.rebind();
+		}
+
+		if( streak != null ) {
+			streak.rebind();
+		}
+
 		threshold.rebind();
+		if( emission != null ) {
+			emission.rebind();
+		}
+
 		combine.rebind();
 		pingPongBuffer.rebind();
+		if( mix != null ) {
+			mix.rebind();
+		}
+
+		// contents are gone
+		historyValid = false;
+		framesToUpdate = 0;
 	}
 }
@@ -21,6 +21,7 @@ import com.badlogic.gdx.graphics.glutils.FrameBuffer;
 import com.badlogic.gdx.math.Matrix4;
 import com.bitfire.postprocessing.PostProcessorEffect;
 import com.bitfire.postprocessing.filters.CameraBlur;
+import com.bitfire.utils.ShaderWarmup;
 
 /**
  * FIXME this effect is INCOMPLETE!
@@ -39,6 +40,11 @@ public final class CameraMotion extends PostProcessorEffect {
 		camblur.setNormalDepthMap( null );
 	}
 
+	/** Enqueues the program needed by this effect. */
+	public static void enqueueShaders( ShaderWarmup warmup ) {
+		CameraBlur.enqueueShaders( warmup );
+	}
+
 	@Override
 	public void dispose() {
 		camblur.dispose();
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.effects;
+
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.bitfire.postprocessing.PostProcessorEffect;
+import com.bitfire.postprocessing.filters.ColorLookup;
+import com.bitfire.postprocessing.utils.ColorOperation;
+import com.bitfire.postprocessing.utils.Lut3D;
+import com.bitfire.utils.ShaderWarmup;
+
+/**
+ * Applies any number of pointwise color operations, such as saturation, contrast, tint, curves or gradient mapping
+ * rows, at the cost of a single lut lookup per pixel: operations are composed in the order they have been added and
+ * baked into a {@link Lut3D} on the CPU, in parallel, only when any of their parameters changed.
+ * 
+ * Operations shall be pointwise, the same color always mapping to the same result wherever it appears on the screen.
+ * 
+ * @author bmanuel
+ */
+public final class ColorGrading extends PostProcessorEffect {
+	private final Lut3D lut;
+	private final ColorLookup lookup;
+	private final Array<ColorOperation> operations;
+	private final IntArray bakedRevisions;
+	private boolean dirty;
+	private int threads;
+
+	// applies the operations in order
+	private final Lut3D.Transform composition = new Lut3D.Transform() {
+		@Override
+		public void apply( float[] rgb ) {
+			for( int i = 0; i < operations.size; i++ ) {
+				operations.get( i ).apply( rgb );
+			}
+		}
+	};
+
+	/** Creates a new color grading effect baking into a lut of the default size. */
+	public ColorGrading() {
+		this( Lut3D.DefaultSize );
+	}
+
+	/** Creates a new color grading effect baking into a lut of the specified size. */
+	public ColorGrading( int lutSize ) {
+		lut = new Lut3D( lutSize );
+		lookup = new ColorLookup( lut );
+		operations = new Array<ColorOperation>();
+		bakedRevisions = new IntArray();
+		threads = Runtime.getRuntime().availableProcessors();
+		dirty = false;
+	}
+
+	/** Enqueues the program needed by this effect. */
+	public static void enqueueShaders( ShaderWarmup warmup ) {
+		ColorLookup.enqueueShaders( warmup );
+	}
+
+	@Override
+	public void dispose() {
+		lookup.dispose();
+		lut.dispose();
+	}
+
+	/** Appends the operation to the composition, it will be applied after the ones already added. */
+	public void addOperation( ColorOperation operation ) {
+		operations.add( operation );
+		dirty = true;
+	}
+
+	public void removeOperation( ColorOperation operation ) {
+		if( operations.removeValue( operation, true ) ) {
+			dirty = true;
+		}
+	}
+
+	public void clearOperations() {
+		operations.clear();
+		dirty = true;
+	}
+
+	public Array<ColorOperation> getOperations() {
+		return operations;
+	}
+
+	/**
+	 * Sets the number of threads, the rendering one included, to bake the lut with, the processor count by default: the
+	 * worker threads are kept by the lut and reused by every bake, until the effect is disposed.
+	 */
+	public void setBakingThreads( int threads ) {
+		this.threads = Math.max( threads, 1 );
+	}
+
+	public int getBakingThreads() {
+		return threads;
+	}
+
+	public Lut3D getLut() {
+		return lut;
+	}
+
+	/** Bakes the composition if any operation has been added, removed or changed since the last time. */
+	public void bake() {
+		// the operations may have been changed via getOperations() too
+		if( !dirty && operations.size != bakedRevisions.size ) {
+			dirty = true;
+		}
+
+		if( !dirty ) {
+			for( int i = 0; i < operations.size; i++ ) {
+				if( operations.get( i ).getRevision() != bakedRevisions.get( i ) ) {
+					dirty = true;
+					break;
+				}
+			}
+		}
+
+		if( !dirty ) {
+			return;
+		}
+
+		lut.bake( operations.size > 0 ? composition : null, threads );
+
+		bakedRevisions.clear();
+		for( int i = 0; i < operations.size; i++ ) {
+			bakedRevisions.add( operations.get( i ).getRevision() );
+		}
+
+		dirty = false;
+	}
+
+	@Override
+	public void rebind() {
+		lut.rebind();
+		lookup.rebind();
+	}
+
+	@Override
+	public void render( FrameBuffer src, FrameBuffer dest ) {
+		// baking uploads the lut, so it must happen before the filter binds its textures
+		bake();
+
+		restoreViewport( dest );
+		lookup.setInput( src ).setOutput( dest ).render();
+	}
+}
@@ -31,12 +31,16 @@ import com.bitfire.postprocessing.filters.Blur.BlurType;
 import com.bitfire.postprocessing.filters.Combine;
 import com.bitfire.postprocessing.filters.CrtScreen;
 import com.bitfire.postprocessing.filters.CrtScreen.RgbMode;
+import com.bitfire.postprocessing.filters.DistortionMap;
+import com.bitfire.postprocessing.utils.CrtMask;
 import com.bitfire.postprocessing.utils.PingPongBuffer;
+import com.bitfire.utils.ShaderWarmup;
 
 public final class CrtMonitor extends PostProcessorEffect {
 	private PingPongBuffer pingPongBuffer = null;
-	private FrameBuffer buffer = null;
 	private CrtScreen crt;
+	private CrtMask mask = null;
+	private DistortionMap map = null;
 	private Blur blur;
 	private Combine combine;
 	private boolean doblur;
@@ -46,6 +50,15 @@ public final class CrtMonitor extends PostProcessorEffect {
 
 	// the effect is designed to work on the whole screen area, no small/mid size tricks!
 	public CrtMonitor( int fboWidth, int fboHeight, boolean barrelDistortion, boolean performBlur, RgbMode mode ) {
+		this( fboWidth, fboHeight, barrelDistortion, performBlur, mode, false );
+	}
+
+	/**
+	 * Creates a new CRT monitor effect, if maskTexture is true the vignette and the scanlines are precomputed into
+	 * textures once, reducing the per-pixel work to a couple of lookups, see {@link CrtMask}.
+	 */
+	public CrtMonitor( int fboWidth, int fboHeight, boolean barrelDistortion, boolean performBlur, RgbMode mode,
+			boolean maskTexture ) {
 		doblur = performBlur;
 
 		if( doblur ) {
@@ -55,8 +68,6 @@ public final class CrtMonitor extends PostProcessorEffect {
 			blur.setAmount( 1f );
 			// blur.setType( BlurType.Gaussian3x3b ); // high defocus
 			blur.setType( BlurType.Gaussian3x3 ); // modern machines defocus
-		} else {
-			buffer = new FrameBuffer( PostProcessor.getFramebufferFormat(), fboWidth, fboHeight, false );
 		}
 
 		combine = new Combine();
@@ -78,19 +89,43 @@ public final class CrtMonitor extends PostProcessorEffect {
 			throw new GdxRuntimeException( "Unsupported RGB mode" );
 		}
 
-		crt = new CrtScreen( barrelDistortion, mode );
+		// without blurring, the crt result is mixed with the original scene in the same pass
+		crt = new CrtScreen( barrelDistortion, mode, maskTexture, !doblur );
+		if( maskTexture ) {
+			mask = new CrtMask( fboWidth, fboHeight );
+			crt.setMask( mask );
+		}
+	}
+
+	/** Enqueues the programs needed by a CrtMonitor effect constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean barrelDistortion, boolean performBlur, RgbMode mode ) {
+		enqueueShaders( warmup, barrelDistortion, performBlur, mode, false );
+	}
+
+	/** Enqueues the programs needed by a CrtMonitor effect constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean barrelDistortion, boolean performBlur, RgbMode mode,
+			boolean maskTexture ) {
+		if( performBlur ) {
+			Blur.enqueueShaders( warmup, false );
+		}
+
+		if( performBlur ) {
+			Combine.enqueueShaders( warmup, false );
+		}
+
+		CrtScreen.enqueueShaders( warmup, barrelDistortion, mode, maskTexture, !performBlur );
 	}
 
 	@Override
 	public void dispose() {
 		crt.dispose();
 		combine.dispose();
-		if( doblur ) {
-			blur.dispose();
+		if( mask != null ) {
+			mask.dispose();
 		}
 
-		if( buffer != null ) {
-			buffer.dispose();
+		if( doblur ) {
+			blur.dispose();
 		}
 
 		if( pingPongBuffer != null ) {
@@ -139,13 +174,67 @@ public final class CrtMonitor extends PostProcessorEffect {
 
 	public void setDistortion( float distortion ) {
 		crt.setDistortion( distortion );
+		if( map != null ) {
+			map.setDistortion( distortion );
+		}
 	}
 
 	public void setZoom( float zoom ) {
 		crt.setZoom( zoom );
+		if( map != null ) {
+			map.setZoom( zoom );
+		}
+	}
+
+	/**
+	 * Sets the map to look up the barrel distortion from, or null to evaluate it per-pixel, if the effect has been
+	 * constructed to perform it: the map is kept in sync with the distortion and zoom of this effect and baked only when
+	 * they change. The map is not owned by the effect, so it can be shared with a {@link Curvature} effect using the same
+	 * parameters.
+	 */
+	public void setDistortionMap( DistortionMap map ) {
+		this.map = map;
+		if( map != null ) {
+			map.setDistortion( crt.getDistortion() );
+			map.setZoom( crt.getZoom() );
+		}
+
+		crt.setDistortionMap( map );
+	}
+
+	public DistortionMap getDistortionMap() {
+		return map;
+	}
+
+	/**
+	 * Sets the strength, in the [0,1] range, of the aperture grille darkening the color channels not belonging to each
+	 * stripe: this is only available when using the mask texture.
+	 */
+	public void setApertureGrille( float strength ) {
+		if( mask != null ) {
+			mask.setGrilleStrength( strength );
+		}
+	}
+
+	/**
+	 * Sets the blur type used to defocus the image, if blurring has been requested: BlurType.DualFilter is the cheapest
+	 * one on low-end devices.
+	 */
+	public void setBlurType( BlurType type ) {
+		if( doblur ) {
+			blur.setType( type );
+		}
 	}
 
 	// getters
+	public BlurType getBlurType() {
+		return doblur ? blur.getType() : null;
+	}
+
+	/**
+	 * Returns the combine pass mixing the original scene with the result: without blurring, the pass is fused into the
+	 * crt one, which picks up the intensity and saturation parameters from it.
+	 */
 	public Combine getCombinePass() {
 		return combine;
 	}
@@ -168,6 +257,14 @@ public final class CrtMonitor extends PostProcessorEffect {
 
 	@Override
 	public void rebind() {
+		if( mask != null ) {
+			mask.rebind();
+		}
+
+		if( map != null ) {
+			map.rebind();
+		}
+
 		crt.rebind();
 	}
 
@@ -179,6 +276,10 @@ public final class CrtMonitor extends PostProcessorEffect {
 		boolean blendingWasEnabled = PostProcessor.isStateEnabled( GL20.GL_BLEND );
 		Gdx.gl.glDisable( GL10.GL_BLEND );
 
+		if( map != null ) {
+			map.bake();
+		}
+
 		Texture out = null;
 
 		if( doblur ) {
@@ -195,10 +296,9 @@ public final class CrtMonitor extends PostProcessorEffect {
 
 			out = pingPongBuffer.getResultTexture();
 		} else {
-			// crt pass
-			crt.setInput( in ).setOutput( buffer ).render();
-
-			out = buffer.getColorBufferTexture();
+			// the combine pass is fused into the crt one
+			crt.setCombine( combine.getSource1Intensity(), combine.getSource1Saturation(),
+					combine.getSource2Intensity(), combine.getSource2Saturation() );
 		}
 
 		if( blending || blendingWasEnabled ) {
@@ -211,7 +311,12 @@ public final class CrtMonitor extends PostProcessorEffect {
 
 		restoreViewport( dest );
 
-		// do combine pass
-		combine.setOutput( dest ).setInput( in, out ).render();
+		if( doblur ) {
+			// do combine pass
+			combine.setOutput( dest ).setInput( in, out ).render();
+		} else {
+			// single crt pass, straight from the source to the destination
+			crt.setInput( in ).setOutput( dest ).render();
+		}
 	};
 }
@@ -18,26 +18,59 @@ package com.bitfire.postprocessing.effects;
 
 import com.badlogic.gdx.graphics.glutils.FrameBuffer;
 import com.bitfire.postprocessing.PostProcessorEffect;
+import com.bitfire.postprocessing.filters.DistortionMap;
 import com.bitfire.postprocessing.filters.RadialDistortion;
+import com.bitfire.utils.ShaderWarmup;
 
 public final class Curvature extends PostProcessorEffect {
 	private RadialDistortion distort;
+	private DistortionMap map = null;
 
 	public Curvature() {
 		distort = new RadialDistortion();
 	}
 
+	/** Enqueues the program needed by this effect. */
+	public static void enqueueShaders( ShaderWarmup warmup ) {
+		RadialDistortion.enqueueShaders( warmup );
+	}
+
 	@Override
 	public void dispose() {
 		distort.dispose();
 	}
 
+	/**
+	 * Sets the map to look up the distortion from, or null to evaluate it per-pixel: the map is kept in sync with the
+	 * distortion and zoom of this effect and baked only when they change. The map is not owned by the effect, so it can
+	 * be shared with a {@link CrtMonitor} using the same parameters.
+	 */
+	public void setDistortionMap( DistortionMap map ) {
+		this.map = map;
+		if( map != null ) {
+			map.setDistortion( distort.getDistortion() );
+			map.setZoom( distort.getZoom() );
+		}
+
+		distort.setDistortionMap( map );
+	}
+
+	public DistortionMap getDistortionMap() {
+		return map;
+	}
+
 	public void setDistortion( float distortion ) {
 		distort.setDistortion( distortion );
+		if( map != null ) {
+			map.setDistortion( distortion );
+		}
 	}
 
 	public void setZoom( float zoom ) {
 		distort.setZoom( zoom );
+		if( map != null ) {
+			map.setZoom( zoom );
+		}
 	}
 
 	public float getDistortion() {
@@ -50,11 +83,19 @@ public final class Curvature extends PostProcessorEffect {
 
 	@Override
 	public void rebind() {
+		if( map != null ) {
+			map.rebind();
+		}
+
 		distort.rebind();
 	}
 
 	@Override
 	public void render( FrameBuffer src, FrameBuffer dest ) {
+		if( map != null ) {
+			map.bake();
+		}
+
 		restoreViewport( dest );
 		distort.setInput( src ).setOutput( dest ).render();
 	};
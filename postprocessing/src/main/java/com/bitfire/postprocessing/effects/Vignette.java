@@ -16,10 +16,13 @@
 
 package com.bitfire.postprocessing.effects;
 
+import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.glutils.FrameBuffer;
 import com.bitfire.postprocessing.PostProcessorEffect;
 import com.bitfire.postprocessing.filters.Vignetting;
+import com.bitfire.postprocessing.utils.Lut3D;
+import com.bitfire.utils.ShaderWarmup;
 
 public final class Vignette extends PostProcessorEffect {
 	private Vignetting vignetting;
@@ -27,10 +30,28 @@ public final class Vignette extends PostProcessorEffect {
 	private float oneOnW, oneOnH;
 
 	public Vignette( int viewportWidth, int viewportHeight, boolean controlSaturation ) {
+		this( viewportWidth, viewportHeight, controlSaturation, false );
+	}
+
+	/**
+	 * Creates a new vignette effect, if bakeLut is true the gradient mapping is baked into a 3D lut on the CPU whenever
+	 * its parameters change, see {@link Vignetting#Vignetting(boolean, boolean)}.
+	 */
+	public Vignette( int viewportWidth, int viewportHeight, boolean controlSaturation, boolean bakeLut ) {
 		this.controlSaturation = controlSaturation;
 		oneOnW = 1f / (float)viewportWidth;
 		oneOnH = 1f / (float)viewportHeight;
-		vignetting = new Vignetting( controlSaturation );
+		vignetting = new Vignetting( controlSaturation, bakeLut );
+	}
+
+	/** Enqueues the program needed by a Vignette effect constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean controlSaturation ) {
+		enqueueShaders( warmup, controlSaturation, false );
+	}
+
+	/** Enqueues the programs needed by a Vignette effect constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean controlSaturation, boolean bakeLut ) {
+		Vignetting.enqueueShaders( warmup, controlSaturation, bakeLut );
 	}
 
 	@Override
@@ -66,6 +87,11 @@ public final class Vignette extends PostProcessorEffect {
 		vignetting.setLut( texture );
 	}
 
+	/** Sets the pixels of the gradient lut, if the lut is to be baked. */
+	public void setLutPixmap( Pixmap pixmap ) {
+		vignetting.setLut( pixmap );
+	}
+
 	public void setLutIntensity( float value ) {
 		vignetting.setLutIntensity( value );
 	}
@@ -129,6 +155,11 @@ public final class Vignette extends PostProcessorEffect {
 
 	@Override
 	public void rebind() {
+		Lut3D lut = vignetting.getBakedLut();
+		if( lut != null ) {
+			lut.rebind();
+		}
+
 		vignetting.rebind();
 	}
 
@@ -21,6 +21,7 @@ import com.badlogic.gdx.math.Vector2;
 import com.bitfire.postprocessing.PostProcessorEffect;
 import com.bitfire.postprocessing.filters.RadialBlur;
 import com.bitfire.postprocessing.filters.Zoom;
+import com.bitfire.utils.ShaderWarmup;
 
 /** Implements a zooming effect: either a radial blur filter or a zoom filter is used. */
 public final class Zoomer extends PostProcessorEffect {
@@ -40,6 +41,18 @@ public final class Zoomer extends PostProcessorEffect {
 		setup( viewportWidth, viewportHeight, null );
 	}
 
+	/**
+	 * Enqueues the program needed by a Zoomer constructed with the same radial blur quality, or by a plain simple Zoomer if
+	 * quality is null.
+	 */
+	public static void enqueueShaders( ShaderWarmup warmup, RadialBlur.Quality quality ) {
+		if( quality != null ) {
+			RadialBlur.enqueueShaders( warmup, quality );
+		} else {
+			Zoom.enqueueShaders( warmup );
+		}
+	}
+
 	private void setup( int viewportWidth, int viewportHeight, RadialBlur radialBlurFilter ) {
 		radialBlur = radialBlurFilter;
 		if( radialBlur != null ) {
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.filters;
+
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.bitfire.postprocessing.PostProcessor;
+import com.bitfire.postprocessing.utils.FrameBufferPool;
+import com.bitfire.postprocessing.utils.PingPongBuffer;
+import com.bitfire.utils.ShaderWarmup;
+
+/**
+ * Builds a multi-level glow: the source is progressively downsampled through a number of levels, then upsampled back
+ * accumulating each level, scaled by its own weight, on top of the upsampled result of the smaller ones. Wide glows
+ * are obtained at a fraction of the cost of repeatedly blurring at full resolution.
+ * 
+ * The levels are transient framebuffers obtained from the {@link PostProcessor#getFramebufferPool()} pool and given
+ * back as soon as the result is complete, unless they are retained to be consumed by others, see
+ * {@link #setRetainLevels(boolean)}.
+ * 
+ * @author bmanuel
+ */
+public final class BloomPyramid extends MultipassFilter {
+	public static final int MaxLevels = 6;
+
+	private final DualFilterPass down, up, accumulate;
+	private final Format format;
+	private final int width, height;
+	private final FrameBuffer[] levels, sums;
+	private final float[] weights;
+	private int levelCount;
+	private boolean retain = false;
+
+	/** Creates a new pyramid for buffers of the specified size, if rgbm is true it will operate on RGBM-encoded buffers. */
+	public BloomPyramid( int width, int height, boolean rgbm ) {
+		this.width = width;
+		this.height = height;
+
+		// RGBM needs the alpha channel to store the multiplier
+		Format fbFormat = PostProcessor.getFramebufferFormat();
+		this.format = (rgbm || fbFormat == null) ? Format.RGBA8888 : fbFormat;
+
+		down = new DualFilterPass( false, rgbm );
+		up = new DualFilterPass( true, rgbm );
+		accumulate = new DualFilterPass( true, true, rgbm );
+
+		levels = new FrameBuffer[ MaxLevels ];
+		sums = new FrameBuffer[ MaxLevels ];
+		weights = new float[ MaxLevels ];
+
+		setLevels( 5 );
+	}
+
+	/** Enqueues the programs needed by a filter constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean rgbm ) {
+		DualFilterPass.enqueueShaders( warmup, false, rgbm );
+		DualFilterPass.enqueueShaders( warmup, true, rgbm );
+		DualFilterPass.enqueueShaders( warmup, true, true, rgbm );
+	}
+
+	public void dispose() {
+		releaseLevels();
+		down.dispose();
+		up.dispose();
+		accumulate.dispose();
+	}
+
+	/**
+	 * Sets the number of levels, each one being half the size of the previous one, and resets the weights so that each
+	 * level contributes the same amount. The number of levels is limited by {@link #MaxLevels} and by the buffer size.
+	 */
+	public void setLevels( int levels ) {
+		int count = 1;
+		while( count < Math.min( levels, MaxLevels ) && (width >> (count + 1)) >= 2 && (height >> (count + 1)) >= 2 ) {
+			count++;
+		}
+
+		levelCount = count;
+		for( int i = 0; i < MaxLevels; i++ ) {
+			weights[i] = 1f / (float)levelCount;
+		}
+	}
+
+	/** Sets the weight of the specified level, level 0 being the largest, half the size of the source. */
+	public void setWeight( int level, float weight ) {
+		weights[level] = weight;
+	}
+
+	/**
+	 * If true, the downsampled levels will be kept until the next rendering operation instead of being given back to the
+	 * pool as soon as the result is complete, so that they can be consumed via {@link #getLevelTexture(int)}.
+	 */
+	public void setRetainLevels( boolean retain ) {
+		this.retain = retain;
+		if( !retain ) {
+			releaseLevels();
+		}
+	}
+
+	public boolean isRetainingLevels() {
+		return retain;
+	}
+
+	/** Returns the downsampled contents of the specified level if retained, level 0 being the largest, or null. */
+	public Texture getLevelTexture( int level ) {
+		return levels[level] != null ? levels[level].getColorBufferTexture() : null;
+	}
+
+	public int getLevels() {
+		return levelCount;
+	}
+
+	public float getWeight( int level ) {
+		return weights[level];
+	}
+
+	@Override
+	public void rebind() {
+		down.rebind();
+		up.rebind();
+		accumulate.rebind();
+	}
+
+	@Override
+	public void render( PingPongBuffer buffer ) {
+		FrameBufferPool pool = PostProcessor.getFramebufferPool();
+
+		// levels retained from the previous rendering are not needed anymore
+		releaseLevels();
+
+		// the result will be written to the buffer's next target, as any other pass
+		Texture source = buffer.capture();
+
+		// downsample
+		Texture input = source;
+		int w = width, h = height;
+		for( int i = 0; i < levelCount; i++ ) {
+			down.setTexelOffset( 1f / w, 1f / h );
+
+			w = Math.max( 1, w / 2 );
+			h = Math.max( 1, h / 2 );
+			levels[i] = pool.obtain( format, w, h );
+
+			down.setInput( input ).setOutput( levels[i] ).render();
+			input = levels[i].getColorBufferTexture();
+		}
+
+		// accumulate on the way up, the smallest level being weighted while upsampling it
+		Texture sum = levels[levelCount - 1].getColorBufferTexture();
+		float sumWeight = weights[levelCount - 1];
+
+		for( int i = levelCount - 2; i >= 0; i-- ) {
+			sums[i] = pool.obtain( format, levels[i].getWidth(), levels[i].getHeight() );
+
+			accumulate.setTexelOffset( 1f / levels[i + 1].getWidth(), 1f / levels[i + 1].getHeight() );
+			accumulate.setWeights( sumWeight, weights[i] );
+			accumulate.setInput( sum, levels[i].getColorBufferTexture() ).setOutput( sums[i] ).render();
+
+			sum = sums[i].getColorBufferTexture();
+			sumWeight = 1f;
+		}
+
+		// upsample the sum to the buffer
+		up.setTexelOffset( 1f / levels[0].getWidth(), 1f / levels[0].getHeight() );
+		up.setWeights( sumWeight, 0 );
+		up.setInput( sum ).setOutput( buffer.getResultBuffer() ).render();
+
+		for( int i = 0; i < levelCount; i++ ) {
+			if( sums[i] != null ) {
+				pool.free( sums[i] );
+				sums[i] = null;
+			}
+		}
+
+		if( !retain ) {
+			releaseLevels();
+		}
+	}
+
+	private void releaseLevels() {
+		FrameBufferPool pool = PostProcessor.getFramebufferPool();
+		for( int i = 0; i < MaxLevels; i++ ) {
+			if( levels[i] != null ) {
+				pool.free( levels[i] );
+				levels[i] = null;
+			}
+		}
+	}
+}
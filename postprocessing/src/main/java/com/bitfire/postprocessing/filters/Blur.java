@@ -16,8 +16,11 @@
 
 package com.bitfire.postprocessing.filters;
 
+import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.LongMap;
 import com.bitfire.postprocessing.utils.PingPongBuffer;
+import com.bitfire.utils.ShaderWarmup;
 
 public final class Blur extends MultipassFilter {
 	// @formatter:off
@@ -39,6 +42,9 @@ public final class Blur extends MultipassFilter {
 		Gaussian3x3b( Tap.Tap3x3 ),	// R=5 (11x11, policy "higher-then-discard")
 		Gaussian5x5( Tap.Tap5x5 ),
 		Gaussian5x5b( Tap.Tap5x5 ), // R=9 (19x19, policy "higher-then-discard")
+		Gaussian( null ), // any radius, sigma=amount, taps merged into bilinear fetches
+		DualFilter( null ), // levels=passes, sampling offset=amount (1 if unspecified)
+		SummedArea( null ), // box radius=amount pixels, constant cost, no RGBM support
 		;
 
 		public final Tap tap;
@@ -49,42 +55,145 @@ public final class Blur extends MultipassFilter {
 	}
 	// @formatter:on
 
+	/**
+	 * The maximum radius, in pixels, of the kernels computed for the {@link BlurType#Gaussian} blur type when tap
+	 * coordinates are computed by the vertex program: longer kernels are split into several passes there, see
+	 * {@link Convolve2D}.
+	 */
+	public static final int MaxGaussianRadius = 32;
+
+	/**
+	 * The maximum radius, in pixels, of the kernels computed for the {@link BlurType#Gaussian} blur type when tap
+	 * coordinates are computed by the fragment program, where the whole kernel is a single pass: 18 pixels merge into 19
+	 * taps, the longest kernel available before, whose weights and offsets take 38 uniform vectors at most. Longer
+	 * kernels would exceed the uniform budget of low-end GPUs, where each array element can take a vector of its own.
+	 */
+	public static final int MaxFragmentGaussianRadius = 18;
+
+	/**
+	 * Blur amounts are quantized to multiples of this step before computing a kernel, so that amounts animated per
+	 * frame will mostly resolve to an already computed kernel.
+	 */
+	public static final float AmountStep = 0.01f;
+
+	/** Precomputed weights and offsets, shared by all the blur filters. */
+	private static final class Kernel {
+		final float[] weights, offsetsHor, offsetsVert;
+
+		Kernel( int length ) {
+			weights = new float[ length ];
+			offsetsHor = new float[ length * 2 ];
+			offsetsVert = new float[ length * 2 ];
+		}
+	}
+
+	// keyed by type, radius, size and amount bucket, see kernelKey
+	private static final LongMap<Kernel> kernels = new LongMap<Kernel>();
+	private static final int MaxCachedKernels = 256;
+
 	// blur
 	private BlurType type;
 	private float amount;
 	private int passes;
+	private int gaussianRadius;
 
 	// fbo, textures
+	private final int width, height;
 	private float invWidth, invHeight;
+	private final boolean rgbm, vertexTaps;
+
+	// keyed by the kernel radius, Gaussian kernels are created lazily
 	private final IntMap<Convolve2D> convolve = new IntMap<Convolve2D>( Tap.values().length );
+	private DualFilter dual = null;
+	private SummedAreaBlur summed = null;
+
+	// the kernels last uploaded, keyed by the kernel radius
+	private final IntMap<Kernel> uploaded = new IntMap<Kernel>();
 
 	public Blur( int width, int height ) {
+		this( width, height, false );
+	}
+
+	/** Creates a new blur filter, if rgbm is true it will operate on RGBM-encoded buffers. */
+	public Blur( int width, int height, boolean rgbm ) {
+		this( width, height, rgbm, false );
+	}
+
+	/**
+	 * Creates a new blur filter, if vertexTaps is true the tap coordinates will be computed by the vertex program,
+	 * avoiding dependent texture reads in the fragment program: this is usually way faster on older mobile GPUs.
+	 */
+	public Blur( int width, int height, boolean rgbm, boolean vertexTaps ) {
 		// precompute constants
+		this.width = width;
+		this.height = height;
 		this.invWidth = 1f / (float)width;
 		this.invHeight = 1f / (float)height;
 
 		this.passes = 1;
 		this.amount = 1f;
+		this.gaussianRadius = 0;
+		this.rgbm = rgbm;
+		this.vertexTaps = vertexTaps;
 
 		// create filters
 		for( Tap tap : Tap.values() ) {
-			convolve.put( tap.radius, new Convolve2D( tap.radius ) );
+			convolve.put( tap.radius, new Convolve2D( tap.radius, rgbm, vertexTaps ) );
 		}
 
 		setType( BlurType.Gaussian5x5 );
 	}
 
+	/** Enqueues the programs needed by a filter constructed with the same parameters, for all the blur types. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean rgbm ) {
+		enqueueShaders( warmup, rgbm, false );
+	}
+
+	/** Enqueues the programs needed by a filter constructed with the same parameters, for all the blur types. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean rgbm, boolean vertexTaps ) {
+		for( Tap tap : Tap.values() ) {
+			Convolve2D.enqueueShaders( warmup, tap.radius, rgbm, vertexTaps );
+		}
+
+		DualFilter.enqueueShaders( warmup, rgbm );
+		if( !rgbm ) {
+			SummedAreaBlur.enqueueShaders( warmup );
+		}
+	}
+
+	/**
+	 * Enqueues the programs needed by a filter constructed with the same parameters to perform a
+	 * {@link BlurType#Gaussian} blur with the specified radius, see {@link #setGaussian(float, int)}.
+	 */
+	public static void enqueueGaussianShaders( ShaderWarmup warmup, int radius, boolean rgbm, boolean vertexTaps ) {
+		Convolve2D.enqueueShaders( warmup, mergedRadius( clampGaussianRadius( radius, vertexTaps ) ), rgbm, vertexTaps );
+	}
+
 	public void dispose() {
 		for( Convolve2D c : convolve.values() ) {
 			c.dispose();
 		}
+
+		if( dual != null ) {
+			dual.dispose();
+		}
+
+		if( summed != null ) {
+			summed.dispose();
+		}
 	}
 
 	public void setPasses( int passes ) {
 		this.passes = passes;
 	}
 
+	/** @throws GdxRuntimeException if the type is not supported on RGBM-encoded buffers. */
 	public void setType( BlurType type ) {
+		// sums of RGBM-encoded values are meaningless
+		if( type == BlurType.SummedArea && rgbm ) {
+			throw new GdxRuntimeException( "The summed-area table blur doesn't support RGBM-encoded buffers" );
+		}
+
 		if( this.type != type ) {
 			this.type = type;
 			computeBlurWeightings();
@@ -97,6 +206,20 @@ public final class Blur extends MultipassFilter {
 		computeBlurWeightings();
 	}
 
+	/**
+	 * Switches to a {@link BlurType#Gaussian} blur with the specified standard deviation, in pixels, sampling radius
+	 * pixels on each side: adjacent taps are merged into single bilinear fetches, so that only radius/2 fetches per side
+	 * are needed. If radius is zero it will be derived from sigma, covering three standard deviations. The radius is
+	 * capped to {@link #MaxGaussianRadius}, or to {@link #MaxFragmentGaussianRadius} if tap coordinates are computed by
+	 * the fragment program.
+	 */
+	public void setGaussian( float sigma, int radius ) {
+		this.type = BlurType.Gaussian;
+		this.amount = sigma;
+		this.gaussianRadius = radius;
+		computeBlurWeightings();
+	}
+
 	public int getPasses() {
 		return passes;
 	}
@@ -112,7 +235,20 @@ public final class Blur extends MultipassFilter {
 
 	@Override
 	public void render( PingPongBuffer buffer ) {
-		Convolve2D c = convolve.get( this.type.tap.radius );
+		if( this.type == BlurType.DualFilter ) {
+			dual.setLevels( this.passes );
+			dual.setOffset( this.amount > 0 ? this.amount : 1f );
+			dual.render( buffer );
+			return;
+		}
+
+		if( this.type == BlurType.SummedArea ) {
+			summed.setRadius( this.amount, this.amount );
+			summed.render( buffer );
+			return;
+		}
+
+		Convolve2D c = convolve.get( kernelRadius() );
 
 		for( int i = 0; i < this.passes; i++ ) {
 			c.render( buffer );
@@ -120,12 +256,82 @@ public final class Blur extends MultipassFilter {
 	}
 
 	private void computeBlurWeightings() {
-		boolean hasdata = true;
-		Convolve2D c = convolve.get( this.type.tap.radius );
+		if( this.type == BlurType.DualFilter ) {
+			// no kernel, levels and offset are set at rendering time
+			if( dual == null ) {
+				dual = new DualFilter( width, height, rgbm );
+			}
+
+			return;
+		}
+
+		if( this.type == BlurType.SummedArea ) {
+			// no kernel, the box size is set at rendering time
+			if( summed == null ) {
+				summed = new SummedAreaBlur( width, height );
+			}
+
+			return;
+		}
+
+		int radius = kernelRadius();
+		Convolve2D c = convolve.get( radius );
+		if( c == null ) {
+			c = new Convolve2D( radius, rgbm, vertexTaps );
+			convolve.put( radius, c );
+		}
+
+		Kernel kernel = resolveKernel( radius, c.length );
 
-		float[] outWeights = c.weights;
-		float[] outOffsetsH = c.offsetsHor;
-		float[] outOffsetsV = c.offsetsVert;
+		// upload only if the resolved kernel actually changed
+		if( kernel != null && uploaded.get( radius ) != kernel ) {
+			System.arraycopy( kernel.weights, 0, c.weights, 0, c.length );
+			System.arraycopy( kernel.offsetsHor, 0, c.offsetsHor, 0, c.length * 2 );
+			System.arraycopy( kernel.offsetsVert, 0, c.offsetsVert, 0, c.length * 2 );
+			c.upload();
+			uploaded.put( radius, kernel );
+		}
+	}
+
+	// returns the cached kernel for the current type, amount and size, computing it if needed
+	private Kernel resolveKernel( int radius, int length ) {
+		boolean custom = (type == BlurType.Gaussian3x3 || type == BlurType.Gaussian5x5 || type == BlurType.Gaussian);
+		int bucket = custom ? Math.min( Math.round( Math.abs( this.amount ) / AmountStep ), 0xffffff ) : 0;
+		long key = kernelKey( type == BlurType.Gaussian ? gaussianRadius() : 0, bucket );
+
+		Kernel kernel = kernels.get( key );
+		if( kernel == null ) {
+			kernel = new Kernel( length );
+			if( !computeWeightings( radius, bucket * AmountStep, kernel ) ) {
+				return null;
+			}
+
+			if( kernels.size >= MaxCachedKernels ) {
+				kernels.clear();
+			}
+
+			kernels.put( key, kernel );
+		}
+
+		return kernel;
+	}
+
+	// 4 bits type, 6 bits gaussian radius, 15 bits width, 15 bits height, 24 bits amount bucket
+	private long kernelKey( int gaussianRadius, int bucket ) {
+		// @off
+		return ((long)type.ordinal() << 60)
+				| ((long)(gaussianRadius & 0x3f) << 54)
+				| ((long)(width & 0x7fff) << 39)
+				| ((long)(height & 0x7fff) << 24)
+				| (bucket & 0xffffff);
+		// @on
+	}
+
+	private boolean computeWeightings( int radius, float amount, Kernel kernel ) {
+		float[] outWeights = kernel.weights;
+		float[] outOffsetsH = kernel.offsetsHor;
+		float[] outOffsetsV = kernel.offsetsVert;
+		int length = outWeights.length;
 
 		float dx = this.invWidth;
 		float dy = this.invHeight;
@@ -133,8 +339,8 @@ public final class Blur extends MultipassFilter {
 		switch( this.type ) {
 		case Gaussian3x3:
 		case Gaussian5x5:
-			computeKernel( this.type.tap.radius, this.amount, outWeights );
-			computeOffsets( this.type.tap.radius, this.invWidth, this.invHeight, outOffsetsH, outOffsetsV );
+			computeKernel( radius, amount, outWeights );
+			computeOffsets( radius, this.invWidth, this.invHeight, outOffsetsH, outOffsetsV );
 			break;
 
 		case Gaussian3x3b:
@@ -165,7 +371,7 @@ public final class Blur extends MultipassFilter {
 			outOffsetsV[5] = 1.33333f;
 
 			// scale offsets from binomial space to screen space
-			for( int i = 0; i < c.length * 2; i++ ) {
+			for( int i = 0; i < length * 2; i++ ) {
 				outOffsetsH[i] *= dx;
 				outOffsetsV[i] *= dy;
 			}
@@ -211,19 +417,97 @@ public final class Blur extends MultipassFilter {
 			outOffsetsV[9] = 3.23077f;
 
 			// scale offsets from binomial space to screen space
-			for( int i = 0; i < c.length * 2; i++ ) {
+			for( int i = 0; i < length * 2; i++ ) {
 				outOffsetsH[i] *= dx;
 				outOffsetsV[i] *= dy;
 			}
 
 			break;
-		default:
-			hasdata = false;
+
+		case Gaussian:
+			computeLinearKernel( gaussianRadius(), amount, outWeights, outOffsetsH, outOffsetsV );
 			break;
+
+		default:
+			return false;
 		}
 
-		if( hasdata ) {
-			c.upload();
+		return true;
+	}
+
+	// the radius of the kernel in use, expressed in taps
+	private int kernelRadius() {
+		if( this.type == BlurType.Gaussian ) {
+			return mergedRadius( gaussianRadius() );
+		}
+
+		return this.type.tap.radius;
+	}
+
+	// the radius of the Gaussian kernel, expressed in pixels
+	private int gaussianRadius() {
+		int radius = gaussianRadius > 0 ? gaussianRadius : (int)Math.ceil( 3f * this.amount );
+		return clampGaussianRadius( radius, vertexTaps );
+	}
+
+	private static int clampGaussianRadius( int radius, boolean vertexTaps ) {
+		return Math.max( 1, Math.min( radius, vertexTaps ? MaxGaussianRadius : MaxFragmentGaussianRadius ) );
+	}
+
+	// pairs of adjacent pixels are fetched at once, the outermost one may be left alone
+	private static int mergedRadius( int radius ) {
+		return (radius + 1) / 2;
+	}
+
+	/*
+	 * Computes the discrete Gaussian kernel for the specified radius, then merges pairs of adjacent taps into a single
+	 * one positioned in between, at the offset where bilinear filtering will produce their weighted sum.
+	 */
+	private void computeLinearKernel( int blurRadius, float sigma, float[] outWeights, float[] outOffsetH,
+			float[] outOffsetV ) {
+		int merged = mergedRadius( blurRadius );
+		float s = Math.max( sigma, 0.001f );
+		float twoSigmaSquare = 2.0f * s * s;
+
+		// discrete weights for the pixels at [0, radius], the kernel being symmetrical
+		float[] discrete = new float[ blurRadius + 1 ];
+		float total = 0;
+		for( int i = 0; i <= blurRadius; i++ ) {
+			discrete[i] = (float)Math.exp( -(i * i) / twoSigmaSquare );
+			total += (i == 0) ? discrete[i] : 2f * discrete[i];
+		}
+
+		final int X = 0, Y = 1;
+		for( int i = 0; i <= merged; i++ ) {
+			float weight, offset;
+
+			if( i == 0 ) {
+				weight = discrete[0];
+				offset = 0;
+			} else {
+				int p = 2 * i - 1;
+				float w1 = discrete[p];
+				float w2 = (p + 1 <= blurRadius) ? discrete[p + 1] : 0;
+				weight = w1 + w2;
+				offset = (p * w1 + (p + 1) * w2) / weight;
+			}
+
+			weight /= total;
+
+			// mirror the taps around the center one
+			int right = merged + i, left = merged - i;
+			outWeights[right] = weight;
+			outWeights[left] = weight;
+
+			outOffsetH[right * 2 + X] = offset * this.invWidth;
+			outOffsetH[right * 2 + Y] = 0;
+			outOffsetH[left * 2 + X] = -offset * this.invWidth;
+			outOffsetH[left * 2 + Y] = 0;
+
+			outOffsetV[right * 2 + X] = 0;
+			outOffsetV[right * 2 + Y] = offset * this.invHeight;
+			outOffsetV[left * 2 + X] = 0;
+			outOffsetV[left * 2 + Y] = -offset * this.invHeight;
 		}
 	}
 
@@ -267,6 +551,16 @@ public final class Blur extends MultipassFilter {
 
 	@Override
 	public void rebind() {
+		if( dual != null ) {
+			dual.rebind();
+		}
+
+		if( summed != null ) {
+			summed.rebind();
+		}
+
+		// force uploading the kernel again
+		uploaded.clear();
 		computeBlurWeightings();
 	}
 }
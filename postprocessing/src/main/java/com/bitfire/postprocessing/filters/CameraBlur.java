@@ -19,7 +19,9 @@ package com.bitfire.postprocessing.filters;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector2;
+import com.bitfire.postprocessing.utils.TextureBinder;
 import com.bitfire.utils.ShaderLoader;
+import com.bitfire.utils.ShaderWarmup;
 
 /**
  * FIXME this effect is INCOMPLETE!
@@ -30,6 +32,10 @@ public final class CameraBlur extends Filter<CameraBlur> {
 
 	private Texture normaldepth = null;
 	private Vector2 viewport = new Vector2();
+	private final Matrix4 ctp = new Matrix4();
+	private final Matrix4 invProj = new Matrix4();
+	private int blurPasses;
+	private float blurScale, near, far, depthScale;
 
 	public enum Param implements Parameter {
 		// @formatter:off
@@ -71,31 +77,42 @@ public final class CameraBlur extends Filter<CameraBlur> {
 		// dolut = false;
 	}
 
+	/** Enqueues the program needed by this filter. */
+	public static void enqueueShaders( ShaderWarmup warmup ) {
+		warmup.add( "screenspace", "camerablur" );
+	}
+
 	public void setNormalDepthMap( Texture texture ) {
 		this.normaldepth = texture;
 	}
 
 	public void setCurrentToPrevious( Matrix4 ctp ) {
-		setParams( Param.CurrentToPrevious, ctp );
+		this.ctp.set( ctp );
+		setParams( Param.CurrentToPrevious, this.ctp );
 		endParams();
 	}
 
 	public void setInverseProj( Matrix4 invProj ) {
-		setParams( Param.InvProj, invProj );
+		this.invProj.set( invProj );
+		setParams( Param.InvProj, this.invProj );
 		endParams();
 	}
 
 	public void setBlurPasses( int passes ) {
+		this.blurPasses = passes;
 		setParams( Param.BlurPasses, passes );
 		endParams();
 	}
 
 	public void setBlurScale( float blurScale ) {
+		this.blurScale = blurScale;
 		setParams( Param.BlurScale, blurScale );
 		endParams();
 	}
 
 	public void setNearFarPlanes( float near, float far ) {
+		this.near = near;
+		this.far = far;
 		setParams( Param.Near, near );
 		setParams( Param.Far, far );
 		endParams();
@@ -104,9 +121,11 @@ public final class CameraBlur extends Filter<CameraBlur> {
 	public void setViewport( float width, float height ) {
 		viewport.set( width, height );
 		setParams( Param.Viewport, viewport );
+		endParams();
 	}
 
 	public void setDepthScale( float scale ) {
+		this.depthScale = scale;
 		setParams( Param.DepthScale, scale );
 		endParams();
 	}
@@ -115,13 +134,20 @@ public final class CameraBlur extends Filter<CameraBlur> {
 	public void rebind() {
 		setParams( Param.InputScene, u_texture0 );
 		setParams( Param.DepthMap, u_texture1 );
+		setParams( Param.CurrentToPrevious, ctp );
+		setParams( Param.InvProj, invProj );
+		setParams( Param.BlurPasses, blurPasses );
+		setParams( Param.BlurScale, blurScale );
+		setParams( Param.Near, near );
+		setParams( Param.Far, far );
+		setParams( Param.Viewport, viewport );
+		setParams( Param.DepthScale, depthScale );
 		endParams();
 	}
 
 	@Override
 	protected void onBeforeRender() {
-		rebind();
-		inputTexture.bind( u_texture0 );
-		normaldepth.bind( u_texture1 );
+		TextureBinder.bind( inputTexture, u_texture0 );
+		TextureBinder.bind( normaldepth, u_texture1 );
 	}
 }
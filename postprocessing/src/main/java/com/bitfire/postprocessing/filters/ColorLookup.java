@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.filters;
+
+import com.bitfire.postprocessing.utils.Lut3D;
+import com.bitfire.postprocessing.utils.TextureBinder;
+import com.bitfire.utils.ShaderLoader;
+import com.bitfire.utils.ShaderWarmup;
+
+/** Maps the input colors through a {@link Lut3D}, with two texture fetches per pixel. */
+public final class ColorLookup extends Filter<ColorLookup> {
+	private Lut3D lut;
+
+	public enum Param implements Parameter {
+		// @formatter:off
+		Texture0("u_texture0",0),
+		TexLut("u_texture1",0),
+		LutSize("LutSize",0)
+		;
+		// @formatter:on
+
+		private final String mnemonic;
+		private int elementSize;
+
+		private Param( String m, int elementSize ) {
+			this.mnemonic = m;
+			this.elementSize = elementSize;
+		}
+
+		@Override
+		public String mnemonic() {
+			return this.mnemonic;
+		}
+
+		@Override
+		public int arrayElementSize() {
+			return this.elementSize;
+		}
+	}
+
+	public ColorLookup( Lut3D lut ) {
+		super( ShaderLoader.fromFile( "screenspace", "color-grading" ) );
+		this.lut = lut;
+		rebind();
+	}
+
+	/** Enqueues the program needed by this filter. */
+	public static void enqueueShaders( ShaderWarmup warmup ) {
+		warmup.add( "screenspace", "color-grading" );
+	}
+
+	public void setLut( Lut3D lut ) {
+		this.lut = lut;
+		setParam( Param.LutSize, (float)lut.getSize() );
+	}
+
+	public Lut3D getLut() {
+		return lut;
+	}
+
+	@Override
+	public void rebind() {
+		setParams( Param.Texture0, u_texture0 );
+		setParams( Param.TexLut, u_texture1 );
+		setParams( Param.LutSize, (float)lut.getSize() );
+		endParams();
+	}
+
+	@Override
+	protected void onBeforeRender() {
+		TextureBinder.bind( inputTexture, u_texture0 );
+		TextureBinder.bind( lut.getTexture(), u_texture1 );
+	}
+}
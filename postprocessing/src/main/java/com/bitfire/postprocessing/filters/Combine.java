@@ -18,9 +18,16 @@ package com.bitfire.postprocessing.filters;
 
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.glutils.FrameBuffer;
-import com.bitfire.utils.ShaderLoader;
+import com.bitfire.postprocessing.utils.TextureBinder;
+import com.bitfire.utils.ShaderVariants;
+import com.bitfire.utils.ShaderWarmup;
 
 public final class Combine extends Filter<Combine> {
+	private static final ShaderVariants Variants = new ShaderVariants( "screenspace", "combine", "DECODE_SRC2_RGBM",
+			"ADJUST_SRC1_SATURATION", "ADJUST_SRC2_SATURATION" );
+	private static final int DecodeSource2Rgbm = Variants.feature( "DECODE_SRC2_RGBM" );
+	private static final int AdjustSource1Saturation = Variants.feature( "ADJUST_SRC1_SATURATION" );
+	private static final int AdjustSource2Saturation = Variants.feature( "ADJUST_SRC2_SATURATION" );
 
 	private float s1i, s1s, s2i, s2s;
 
@@ -56,13 +63,47 @@ public final class Combine extends Filter<Combine> {
 	private Texture inputTexture2 = null;
 
 	public Combine() {
-		super( ShaderLoader.fromFile( "screenspace", "combine" ) );
+		this( false );
+	}
+
+	/** Creates a new combine filter, if source2Rgbm is true the second source will be decoded from RGBM. */
+	public Combine( boolean source2Rgbm ) {
+		super( Variants, permutation( source2Rgbm ) );
 		s1i = 1f;
 		s2i = 1f;
 		s1s = 1f;
 		s2s = 1f;
 
 		rebind();
+		updatePermutation();
+	}
+
+	/** Enqueues the programs needed by a filter constructed with the same parameters, specializations included. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean source2Rgbm ) {
+		int generic = permutation( source2Rgbm );
+		Variants.enqueue( warmup, generic );
+		Variants.enqueue( warmup, generic & ~AdjustSource1Saturation );
+		Variants.enqueue( warmup, generic & ~AdjustSource2Saturation );
+		Variants.enqueue( warmup, generic & ~(AdjustSource1Saturation | AdjustSource2Saturation) );
+	}
+
+	private static int permutation( boolean source2Rgbm ) {
+		return (source2Rgbm ? DecodeSource2Rgbm : 0) | AdjustSource1Saturation | AdjustSource2Saturation;
+	}
+
+	/** Saturation adjustments are compiled out when they would leave the colors unchanged. */
+	@Override
+	protected int getSpecializedPermutation() {
+		int result = permutation( hasFeature( DecodeSource2Rgbm ) );
+		if( s1s == 1f ) {
+			result &= ~AdjustSource1Saturation;
+		}
+
+		if( s2s == 1f ) {
+			result &= ~AdjustSource2Saturation;
+		}
+
+		return result;
 	}
 
 	public Combine setInput( FrameBuffer buffer1, FrameBuffer buffer2 ) {
@@ -89,12 +130,18 @@ public final class Combine extends Filter<Combine> {
 
 	public void setSource1Saturation( float saturation ) {
 		s1s = saturation;
-		setParam( Combine.Param.Source1Saturation, saturation );
+		updatePermutation();
+		if( hasFeature( AdjustSource1Saturation ) ) {
+			setParam( Combine.Param.Source1Saturation, saturation );
+		}
 	}
 
 	public void setSource2Saturation( float saturation ) {
 		s2s = saturation;
-		setParam( Combine.Param.Source2Saturation, saturation );
+		updatePermutation();
+		if( hasFeature( AdjustSource2Saturation ) ) {
+			setParam( Combine.Param.Source2Saturation, saturation );
+		}
 	}
 
 	public float getSource1Intensity() {
@@ -119,14 +166,20 @@ public final class Combine extends Filter<Combine> {
 		setParams( Param.Texture1, u_texture1 );
 		setParams( Param.Source1Intensity, s1i );
 		setParams( Param.Source2Intensity, s2i );
-		setParams( Param.Source1Saturation, s1s );
-		setParams( Param.Source2Saturation, s2s );
+		if( hasFeature( AdjustSource1Saturation ) ) {
+			setParams( Param.Source1Saturation, s1s );
+		}
+
+		if( hasFeature( AdjustSource2Saturation ) ) {
+			setParams( Param.Source2Saturation, s2s );
+		}
+
 		endParams();
 	}
 
 	@Override
 	protected void onBeforeRender() {
-		inputTexture.bind( u_texture0 );
-		inputTexture2.bind( u_texture1 );
+		TextureBinder.bind( inputTexture, u_texture0 );
+		TextureBinder.bind( inputTexture2, u_texture1 );
 	}
 }
@@ -16,9 +16,19 @@
 
 package com.bitfire.postprocessing.filters;
 
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.bitfire.postprocessing.utils.TextureBinder;
 import com.bitfire.utils.ShaderLoader;
+import com.bitfire.utils.ShaderWarmup;
 
 public final class Convolve1D extends Filter<Convolve1D> {
+	/**
+	 * The maximum number of taps whose coordinates can be computed by the vertex program, as bound by the minimum number
+	 * of varying vectors guaranteed by OpenGL ES 2.0.
+	 */
+	public static final int MaxVertexTaps = 8;
+
 	public enum Param implements Parameter {
 		// @formatter:off
 		Texture( "u_texture0", 0 ),
@@ -58,11 +68,64 @@ public final class Convolve1D extends Filter<Convolve1D> {
 	}
 
 	public Convolve1D( int length, float[] weights_data, float[] offsets ) {
-		super( ShaderLoader.fromFile( "screenspace", "convolve-1d", "#define LENGTH " + length ) );
+		this( length, weights_data, offsets, false );
+	}
+
+	/**
+	 * Creates a new convolution filter, if rgbm is true the input is expected to be RGBM-encoded and the output will be
+	 * encoded as well, the convolution being performed on the decoded values.
+	 */
+	public Convolve1D( int length, float[] weights_data, float[] offsets, boolean rgbm ) {
+		this( length, weights_data, offsets, rgbm, false );
+	}
+
+	/**
+	 * Creates a new convolution filter, if vertexTaps is true the tap coordinates will be computed by the vertex program
+	 * rather than by the fragment program, so that no dependent texture reads will be performed: in this case length
+	 * shall not exceed {@link #MaxVertexTaps}, see {@link Convolve2D} for splitting longer kernels.
+	 */
+	public Convolve1D( int length, float[] weights_data, float[] offsets, boolean rgbm, boolean vertexTaps ) {
+		super( load( length, rgbm, vertexTaps ) );
 		setWeights( length, weights_data, offsets );
 		rebind();
 	}
 
+	private static ShaderProgram load( int length, boolean rgbm, boolean vertexTaps ) {
+		if( vertexTaps ) {
+			if( length > MaxVertexTaps ) {
+				throw new GdxRuntimeException( "Too many taps to be computed by the vertex program (" + length + ")" );
+			}
+
+			return ShaderLoader.fromFile( "convolve-1d", "convolve-1d", vertexDefines( length ),
+					defines( length, rgbm, true ) );
+		}
+
+		return ShaderLoader.fromFile( "screenspace", "convolve-1d", "", defines( length, rgbm, false ) );
+	}
+
+	/** Enqueues the program needed by a filter constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, int length, boolean rgbm ) {
+		enqueueShaders( warmup, length, rgbm, false );
+	}
+
+	/** Enqueues the program needed by a filter constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, int length, boolean rgbm, boolean vertexTaps ) {
+		if( vertexTaps ) {
+			warmup.add( "convolve-1d", "convolve-1d", vertexDefines( length ), defines( length, rgbm, true ) );
+		} else {
+			warmup.add( "screenspace", "convolve-1d", "", defines( length, rgbm, false ) );
+		}
+	}
+
+	private static String vertexDefines( int length ) {
+		return "#define LENGTH " + length;
+	}
+
+	private static String defines( int length, boolean rgbm, boolean vertexTaps ) {
+		return "#define LENGTH " + length + (rgbm ? "\n#define ENCODE_RGBM" : "")
+				+ (vertexTaps ? "\n#define VERTEX_TAPS" : "");
+	}
+
 	public void setWeights( int length, float[] weights, float[] offsets ) {
 		this.weights = weights;
 		this.length = length;
@@ -87,6 +150,6 @@ public final class Convolve1D extends Filter<Convolve1D> {
 
 	@Override
 	protected void onBeforeRender() {
-		inputTexture.bind( u_texture0 );
+		TextureBinder.bind( inputTexture, u_texture0 );
 	}
 }
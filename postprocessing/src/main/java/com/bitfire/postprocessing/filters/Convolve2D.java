@@ -16,11 +16,21 @@
 
 package com.bitfire.postprocessing.filters;
 
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.bitfire.postprocessing.PostProcessor;
 import com.bitfire.postprocessing.utils.PingPongBuffer;
+import com.bitfire.utils.ShaderWarmup;
 
 /**
  * Encapsulates a separable 2D convolution kernel filter
  * 
+ * When tap coordinates are computed by the vertex program, kernels longer than {@link Convolve1D#MaxVertexTaps} are
+ * split into chunks, each one rendered in its own pass and additively blended on top of the previous ones: this is not
+ * supported for RGBM-encoded buffers, since encoded values can't be summed.
+ * 
  * @author bmanuel
  */
 public final class Convolve2D extends MultipassFilter {
@@ -29,23 +39,81 @@ public final class Convolve2D extends MultipassFilter {
 
 	public final float[] weights, offsetsHor, offsetsVert;
 
-	private Convolve1D hor, vert;
+	private final Convolve1D[] hor, vert;
+
+	// the blend function to restore after accumulating the chunks
+	private final int[] blendFunc = new int[ 4 ];
 
 	public Convolve2D( int radius ) {
+		this( radius, false );
+	}
+
+	/** Creates a new separable kernel filter, if rgbm is true it will operate on RGBM-encoded buffers. */
+	public Convolve2D( int radius, boolean rgbm ) {
+		this( radius, rgbm, false );
+	}
+
+	/**
+	 * Creates a new separable kernel filter, if vertexTaps is true the tap coordinates will be computed by the vertex
+	 * program, see {@link Convolve1D}.
+	 */
+	public Convolve2D( int radius, boolean rgbm, boolean vertexTaps ) {
 		this.radius = radius;
 		length = (radius * 2) + 1;
 
-		hor = new Convolve1D( length );
-		vert = new Convolve1D( length, hor.weights );
+		int chunks = chunks( length, vertexTaps );
+		if( chunks > 1 && rgbm ) {
+			throw new GdxRuntimeException( "RGBM-encoded kernels can't be split across multiple passes" );
+		}
 
-		weights = hor.weights;
-		offsetsHor = hor.offsets;
-		offsetsVert = vert.offsets;
+		hor = new Convolve1D[ chunks ];
+		vert = new Convolve1D[ chunks ];
+
+		if( chunks == 1 ) {
+			hor[0] = new Convolve1D( length, new float[ length ], new float[ length * 2 ], rgbm, vertexTaps );
+			vert[0] = new Convolve1D( length, hor[0].weights, new float[ length * 2 ], rgbm, vertexTaps );
+
+			weights = hor[0].weights;
+			offsetsHor = hor[0].offsets;
+			offsetsVert = vert[0].offsets;
+		} else {
+			weights = new float[ length ];
+			offsetsHor = new float[ length * 2 ];
+			offsetsVert = new float[ length * 2 ];
+
+			for( int i = 0; i < chunks; i++ ) {
+				int taps = Math.min( Convolve1D.MaxVertexTaps, length - i * Convolve1D.MaxVertexTaps );
+				hor[i] = new Convolve1D( taps, new float[ taps ], new float[ taps * 2 ], false, true );
+				vert[i] = new Convolve1D( taps, hor[i].weights, new float[ taps * 2 ], false, true );
+			}
+		}
+	}
+
+	/** Enqueues the programs needed by a filter constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, int radius, boolean rgbm ) {
+		enqueueShaders( warmup, radius, rgbm, false );
+	}
+
+	/** Enqueues the programs needed by a filter constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, int radius, boolean rgbm, boolean vertexTaps ) {
+		int length = (radius * 2) + 1;
+		int chunks = chunks( length, vertexTaps );
+
+		for( int i = 0; i < chunks; i++ ) {
+			int taps = (chunks == 1) ? length : Math.min( Convolve1D.MaxVertexTaps, length - i * Convolve1D.MaxVertexTaps );
+			Convolve1D.enqueueShaders( warmup, taps, rgbm, vertexTaps );
+		}
+	}
+
+	private static int chunks( int length, boolean vertexTaps ) {
+		return vertexTaps ? (length + Convolve1D.MaxVertexTaps - 1) / Convolve1D.MaxVertexTaps : 1;
 	}
 
 	public void dispose() {
-		hor.dispose();
-		vert.dispose();
+		for( int i = 0; i < hor.length; i++ ) {
+			hor[i].dispose();
+			vert[i].dispose();
+		}
 	}
 
 	public void upload() {
@@ -54,13 +122,49 @@ public final class Convolve2D extends MultipassFilter {
 
 	@Override
 	public void rebind() {
-		hor.rebind();
-		vert.rebind();
+		if( hor.length > 1 ) {
+			// distribute the kernel among the chunks
+			for( int i = 0, start = 0; i < hor.length; start += hor[i].length, i++ ) {
+				System.arraycopy( weights, start, hor[i].weights, 0, hor[i].length );
+				System.arraycopy( offsetsHor, start * 2, hor[i].offsets, 0, hor[i].length * 2 );
+				System.arraycopy( offsetsVert, start * 2, vert[i].offsets, 0, vert[i].length * 2 );
+			}
+		}
+
+		for( int i = 0; i < hor.length; i++ ) {
+			hor[i].rebind();
+			vert[i].rebind();
+		}
 	}
 
 	@Override
 	public void render( PingPongBuffer buffer ) {
-		hor.setInput( buffer.capture() ).render();
-		vert.setInput( buffer.capture() ).render();
+		render( hor, buffer );
+		render( vert, buffer );
+	}
+
+	private void render( Convolve1D[] chunks, PingPongBuffer buffer ) {
+		Texture source = buffer.capture();
+		chunks[0].setInput( source ).render();
+
+		if( chunks.length > 1 ) {
+			// accumulate the remaining taps on top of the first ones
+			boolean blendingWasEnabled = PostProcessor.isStateEnabled( GL20.GL_BLEND );
+			boolean restoreBlendFunc = PostProcessor.getBlendFunc( blendFunc );
+			Gdx.gl.glEnable( GL20.GL_BLEND );
+			Gdx.gl.glBlendFunc( GL20.GL_ONE, GL20.GL_ONE );
+
+			for( int i = 1; i < chunks.length; i++ ) {
+				chunks[i].setInput( source ).render();
+			}
+
+			if( restoreBlendFunc ) {
+				Gdx.gl20.glBlendFuncSeparate( blendFunc[0], blendFunc[1], blendFunc[2], blendFunc[3] );
+			}
+
+			if( !blendingWasEnabled ) {
+				Gdx.gl.glDisable( GL20.GL_BLEND );
+			}
+		}
 	}
 }
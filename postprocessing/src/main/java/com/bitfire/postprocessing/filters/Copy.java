@@ -16,7 +16,9 @@
 
 package com.bitfire.postprocessing.filters;
 
+import com.bitfire.postprocessing.utils.TextureBinder;
 import com.bitfire.utils.ShaderLoader;
+import com.bitfire.utils.ShaderWarmup;
 
 public class Copy extends Filter<Copy> {
 	public enum Param implements Parameter {
@@ -48,6 +50,11 @@ public class Copy extends Filter<Copy> {
 		super( ShaderLoader.fromFile( "screenspace", "copy" ) );
 	}
 
+	/** Enqueues the program needed by this filter. */
+	public static void enqueueShaders( ShaderWarmup warmup ) {
+		warmup.add( "screenspace", "copy" );
+	}
+
 	@Override
 	public void rebind() {
 		setParam( Param.Texture0, u_texture0 );
@@ -55,6 +62,6 @@ public class Copy extends Filter<Copy> {
 
 	@Override
 	protected void onBeforeRender() {
-		inputTexture.bind( u_texture0 );
+		TextureBinder.bind( inputTexture, u_texture0 );
 	}
 }
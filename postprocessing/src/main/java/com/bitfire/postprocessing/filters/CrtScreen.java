@@ -20,9 +20,23 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.GdxRuntimeException;
-import com.bitfire.utils.ShaderLoader;
+import com.bitfire.postprocessing.utils.CrtMask;
+import com.bitfire.postprocessing.utils.TextureBinder;
+import com.bitfire.utils.ShaderVariants;
+import com.bitfire.utils.ShaderWarmup;
 
 public final class CrtScreen extends Filter<CrtScreen> {
+	private static final ShaderVariants Variants = new ShaderVariants( "screenspace", "crt-screen",
+			"ENABLE_BARREL_DISTORTION", "ENABLE_RGB_SHIFT", "ENABLE_CHROMATIC_ABERRATIONS", "USE_MASK_TEXTURE",
+			"FUSE_COMBINE", "COMBINE_ORIGINAL", "DISTORTION_MAP" );
+	private static final int BarrelDistortion = Variants.feature( "ENABLE_BARREL_DISTORTION" );
+	private static final int RgbShift = Variants.feature( "ENABLE_RGB_SHIFT" );
+	private static final int ChromaticAberrations = Variants.feature( "ENABLE_CHROMATIC_ABERRATIONS" );
+	private static final int MaskTexture = Variants.feature( "USE_MASK_TEXTURE" );
+	private static final int FuseCombine = Variants.feature( "FUSE_COMBINE" );
+	private static final int CombineOriginal = Variants.feature( "COMBINE_ORIGINAL" );
+	private static final int UseDistortionMap = Variants.feature( "DISTORTION_MAP" );
+
 	private float elapsedSecs, offset, zoom;
 	private float cdRedCyan, cdBlueYellow;
 	private Vector2 chromaticDispersion;
@@ -30,7 +44,13 @@ public final class CrtScreen extends Filter<CrtScreen> {
 	private final Color tint;
 	private float distortion;
 	private boolean dodistortion;
+	private DistortionMap map;
 	private RgbMode mode;
+	private final boolean domask;
+	private CrtMask mask;
+	private final Vector2 maskScale;
+	private final boolean docombine;
+	private float s1i, s1s, s2i, s2s;
 
 	public enum RgbMode {
 		None, RgbShift, ChromaticAberrations
@@ -44,7 +64,17 @@ public final class CrtScreen extends Filter<CrtScreen> {
 		ColorOffset("offset",0),
 		ChromaticDispersion("chromaticDispersion",2),
 		Distortion("Distortion",0),
-		Zoom("zoom",0)
+		Zoom("zoom",0),
+		TexMaskVignette("u_texture1",0),
+		TexMaskPattern("u_texture2",0),
+		MaskScale("MaskScale",2),
+		MaskScroll("MaskScroll",0),
+		Flicker("Flicker",0),
+		TexDistortionMap("u_texture3",0),
+		Source1Intensity("Src1Intensity",0),
+		Source1Saturation("Src1Saturation",0),
+		Source2Intensity("Src2Intensity",0),
+		Source2Saturation("Src2Saturation",0)
 		;
 		// @formatter:on
 
@@ -68,15 +98,39 @@ public final class CrtScreen extends Filter<CrtScreen> {
 	}
 
 	public CrtScreen( boolean barrelDistortion, RgbMode mode ) {
-		// @off
-		super( ShaderLoader.fromFile( "screenspace", "crt-screen", (barrelDistortion ? "#define ENABLE_BARREL_DISTORTION\n" : "")
-				+ (mode == RgbMode.RgbShift ? "#define ENABLE_RGB_SHIFT\n" : "")
-				+ (mode == RgbMode.ChromaticAberrations ? "#define ENABLE_CHROMATIC_ABERRATIONS\n" : "") ) );
-		// @on
+		this( barrelDistortion, mode, false );
+	}
+
+	/**
+	 * Creates a new CRT screen filter, if maskTexture is true the vignette, the scanlines and their flickering will be
+	 * looked up from the textures of the mask specified via {@link #setMask(CrtMask)} instead of being evaluated
+	 * per-pixel.
+	 */
+	public CrtScreen( boolean barrelDistortion, RgbMode mode, boolean maskTexture ) {
+		this( barrelDistortion, mode, maskTexture, false );
+	}
+
+	/**
+	 * Creates a new CRT screen filter, if fuseCombine is true the result will be mixed with the original scene in the
+	 * same pass, as the {@link Combine} filter would do with the original scene as the first source and the result as
+	 * the second one, see {@link #setCombine(float, float, float, float)}.
+	 */
+	public CrtScreen( boolean barrelDistortion, RgbMode mode, boolean maskTexture, boolean fuseCombine ) {
+		super( Variants, permutation( barrelDistortion, mode, maskTexture, fuseCombine, fuseCombine ) );
 
 		dodistortion = barrelDistortion;
+		domask = maskTexture;
+		docombine = fuseCombine;
+		map = null;
 		this.mode = mode;
 
+		// leave the result unchanged
+		s1i = 0f;
+		s1s = 1f;
+		s2i = 1f;
+		s2s = 1f;
+
+		maskScale = new Vector2();
 		vtint = new Vector3();
 		tint = new Color();
 		chromaticDispersion = new Vector2();
@@ -99,14 +153,146 @@ public final class CrtScreen extends Filter<CrtScreen> {
 		}
 	}
 
+	/** Enqueues the program needed by a filter constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean barrelDistortion, RgbMode mode ) {
+		enqueueShaders( warmup, barrelDistortion, mode, false );
+	}
+
+	/** Enqueues the program needed by a filter constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean barrelDistortion, RgbMode mode, boolean maskTexture ) {
+		enqueueShaders( warmup, barrelDistortion, mode, maskTexture, false );
+	}
+
+	/** Enqueues the programs needed by a filter constructed with the same parameters, specializations included. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean barrelDistortion, RgbMode mode, boolean maskTexture,
+			boolean fuseCombine ) {
+		enqueueShaders( warmup, barrelDistortion, mode, maskTexture, fuseCombine, false );
+	}
+
+	/**
+	 * Enqueues the programs needed by a filter constructed with the same parameters, specializations included, if
+	 * distortionMap is true the barrel distortion is expected to be looked up from a {@link DistortionMap}.
+	 */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean barrelDistortion, RgbMode mode, boolean maskTexture,
+			boolean fuseCombine, boolean distortionMap ) {
+		int lookup = (barrelDistortion && distortionMap) ? UseDistortionMap : 0;
+		Variants.enqueue( warmup, permutation( barrelDistortion, mode, maskTexture, fuseCombine, fuseCombine ) | lookup );
+		Variants.enqueue( warmup, permutation( barrelDistortion, RgbMode.None, maskTexture, fuseCombine, fuseCombine )
+				| lookup );
+		if( fuseCombine ) {
+			Variants.enqueue( warmup, permutation( barrelDistortion, mode, maskTexture, true, false ) | lookup );
+			Variants.enqueue( warmup, permutation( barrelDistortion, RgbMode.None, maskTexture, true, false ) | lookup );
+		}
+	}
+
+	private static int permutation( boolean barrelDistortion, RgbMode mode, boolean maskTexture, boolean fuseCombine,
+			boolean combineOriginal ) {
+		// @off
+		return (barrelDistortion ? BarrelDistortion : 0)
+				| (mode == RgbMode.RgbShift ? RgbShift : 0)
+				| (mode == RgbMode.ChromaticAberrations ? ChromaticAberrations : 0)
+				| (maskTexture ? MaskTexture : 0)
+				| (fuseCombine ? FuseCombine : 0)
+				| (fuseCombine && combineOriginal ? CombineOriginal : 0);
+		// @on
+	}
+
+	/**
+	 * RGB shifting and chromatic aberrations are compiled out when their amount is zero, as is the original scene when
+	 * its intensity is zero, while the barrel distortion is looked up from the distortion map whenever there is one.
+	 */
+	@Override
+	protected int getSpecializedPermutation() {
+		boolean noop = (mode == RgbMode.RgbShift && offset == 0)
+				|| (mode == RgbMode.ChromaticAberrations && cdRedCyan == 0 && cdBlueYellow == 0);
+		int result = permutation( dodistortion, noop ? RgbMode.None : mode, domask, docombine, s1i != 0 );
+		if( dodistortion && map != null ) {
+			result |= UseDistortionMap;
+		}
+
+		return result;
+	}
+
 	public void setTime( float elapsedSecs ) {
 		this.elapsedSecs = elapsedSecs;
-		setParam( Param.Time, elapsedSecs );
+		if( domask ) {
+			// the time-dependent terms reduce to scrolling the pattern and to a scalar
+			setParams( Param.MaskScroll, CrtMask.getPatternScroll( elapsedSecs ) );
+			setParams( Param.Flicker, flicker( elapsedSecs ) ).endParams();
+		} else {
+			setParam( Param.Time, elapsedSecs );
+		}
+	}
+
+	private static float flicker( float elapsedSecs ) {
+		return 0.97f + 0.03f * (float)Math.sin( 110f * elapsedSecs );
+	}
+
+	/** Sets the mask to look up from, if this filter has been constructed to use one. */
+	public void setMask( CrtMask mask ) {
+		this.mask = mask;
+		if( domask && mask != null ) {
+			maskScale.set( mask.getPatternScaleX(), mask.getPatternScaleY() );
+			setParam( Param.MaskScale, maskScale );
+		}
+	}
+
+	public CrtMask getMask() {
+		return mask;
+	}
+
+	/**
+	 * Sets the map to look up the barrel distortion from, or null to evaluate it per-pixel, if this filter has been
+	 * constructed to perform it: the map shall be baked with the same parameters as this filter, see
+	 * {@link DistortionMap#bake()}.
+	 */
+	public void setDistortionMap( DistortionMap map ) {
+		this.map = map;
+		updatePermutation();
+	}
+
+	public DistortionMap getDistortionMap() {
+		return map;
+	}
+
+	/**
+	 * Sets the intensity and saturation of the original scene and of the result, to be mixed as the {@link Combine}
+	 * filter would, if this filter has been constructed to fuse the combine pass: parameters are uploaded only if they
+	 * actually changed, so this can be invoked every frame.
+	 */
+	public void setCombine( float source1Intensity, float source1Saturation, float source2Intensity,
+			float source2Saturation ) {
+		if( !docombine ) {
+			return;
+		}
+
+		if( s1i == source1Intensity && s1s == source1Saturation && s2i == source2Intensity && s2s == source2Saturation ) {
+			return;
+		}
+
+		s1i = source1Intensity;
+		s1s = source1Saturation;
+		s2i = source2Intensity;
+		s2s = source2Saturation;
+		updatePermutation();
+
+		setCombineParams();
+		endParams();
+	}
+
+	private void setCombineParams() {
+		setParams( Param.Source2Intensity, s2i );
+		setParams( Param.Source2Saturation, s2s );
+		if( hasFeature( CombineOriginal ) ) {
+			setParams( Param.Source1Intensity, s1i );
+			setParams( Param.Source1Saturation, s1s );
+		}
 	}
 
 	public void setColorOffset( float offset ) {
 		this.offset = offset;
-		if( mode == RgbMode.RgbShift ) {
+		updatePermutation();
+		if( hasFeature( RgbShift ) ) {
 			setParam( Param.ColorOffset, this.offset );
 		}
 	}
@@ -121,7 +307,8 @@ public final class CrtScreen extends Filter<CrtScreen> {
 		this.cdBlueYellow = blueYellow;
 		chromaticDispersion.x = cdRedCyan;
 		chromaticDispersion.y = cdBlueYellow;
-		if( mode == RgbMode.ChromaticAberrations ) {
+		updatePermutation();
+		if( hasFeature( ChromaticAberrations ) ) {
 			setParam( Param.ChromaticDispersion, chromaticDispersion );
 		}
 	}
@@ -129,7 +316,8 @@ public final class CrtScreen extends Filter<CrtScreen> {
 	public void setChromaticDispersionRC( float redCyan ) {
 		this.cdRedCyan = redCyan;
 		chromaticDispersion.x = cdRedCyan;
-		if( mode == RgbMode.ChromaticAberrations ) {
+		updatePermutation();
+		if( hasFeature( ChromaticAberrations ) ) {
 			setParam( Param.ChromaticDispersion, chromaticDispersion );
 		}
 	}
@@ -137,7 +325,8 @@ public final class CrtScreen extends Filter<CrtScreen> {
 	public void setChromaticDispersionBY( float blueYellow ) {
 		this.cdBlueYellow = blueYellow;
 		chromaticDispersion.y = cdBlueYellow;
-		if( mode == RgbMode.ChromaticAberrations ) {
+		updatePermutation();
+		if( hasFeature( ChromaticAberrations ) ) {
 			setParam( Param.ChromaticDispersion, chromaticDispersion );
 		}
 	}
@@ -156,14 +345,14 @@ public final class CrtScreen extends Filter<CrtScreen> {
 
 	public void setDistortion( float distortion ) {
 		this.distortion = distortion;
-		if( dodistortion ) {
+		if( dodistortion && !hasFeature( UseDistortionMap ) ) {
 			setParam( Param.Distortion, this.distortion );
 		}
 	}
 
 	public void setZoom( float zoom ) {
 		this.zoom = zoom;
-		if( dodistortion ) {
+		if( dodistortion && !hasFeature( UseDistortionMap ) ) {
 			setParam( Param.Zoom, this.zoom );
 		}
 	}
@@ -176,6 +365,10 @@ public final class CrtScreen extends Filter<CrtScreen> {
 		return chromaticDispersion;
 	}
 
+	public float getDistortion() {
+		return distortion;
+	}
+
 	public float getZoom() {
 		return zoom;
 	}
@@ -186,26 +379,53 @@ public final class CrtScreen extends Filter<CrtScreen> {
 
 	@Override
 	protected void onBeforeRender() {
-		inputTexture.bind( u_texture0 );
+		TextureBinder.bind( inputTexture, u_texture0 );
+		if( domask ) {
+			if( mask == null ) {
+				throw new GdxRuntimeException( "No CRT mask has been specified" );
+			}
+
+			TextureBinder.bind( mask.getVignetteTexture(), u_texture1 );
+			TextureBinder.bind( mask.getPatternTexture(), u_texture2 );
+		}
+
+		if( hasFeature( UseDistortionMap ) ) {
+			TextureBinder.bind( map.getTexture(), u_texture3 );
+		}
 	}
 
 	@Override
 	public void rebind() {
 		setParams( Param.Texture0, u_texture0 );
-		setParams( Param.Time, elapsedSecs );
-		if( mode == RgbMode.RgbShift ) {
+		if( domask ) {
+			setParams( Param.TexMaskVignette, u_texture1 );
+			setParams( Param.TexMaskPattern, u_texture2 );
+			setParams( Param.MaskScale, maskScale );
+			setParams( Param.MaskScroll, CrtMask.getPatternScroll( elapsedSecs ) );
+			setParams( Param.Flicker, flicker( elapsedSecs ) );
+		} else {
+			setParams( Param.Time, elapsedSecs );
+		}
+
+		if( hasFeature( RgbShift ) ) {
 			setParams( Param.ColorOffset, offset );
-		} else if( mode == RgbMode.ChromaticAberrations ) {
+		} else if( hasFeature( ChromaticAberrations ) ) {
 			setParams( Param.ChromaticDispersion, chromaticDispersion );
 		}
 
 		setParams( Param.Tint, vtint );
 
-		if( dodistortion ) {
+		if( hasFeature( UseDistortionMap ) ) {
+			setParams( Param.TexDistortionMap, u_texture3 );
+		} else if( dodistortion ) {
 			setParams( Param.Distortion, distortion );
 			setParams( Param.Zoom, zoom );
 		}
 
+		if( docombine ) {
+			setCombineParams();
+		}
+
 		endParams();
 	}
 }
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.filters;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.Texture.TextureWrap;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.bitfire.postprocessing.PostProcessor;
+import com.bitfire.utils.ShaderLoader;
+import com.bitfire.utils.ShaderWarmup;
+
+/**
+ * Bakes the radial distortion into a map holding, for each pixel of the output, the texture coordinates to sample the
+ * source at, so that {@link RadialDistortion} and {@link CrtScreen} can apply it with a single dependent fetch instead of
+ * evaluating it per-pixel. Coordinates are packed into an RGBA8888 buffer with 16 bits each, since half float formats
+ * can't be relied upon.
+ * 
+ * The map is baked again only when the distortion or the zoom change, via {@link #bake()}: this shall be invoked
+ * outside of any other framebuffer capture, before the filters looking it up get rendered. A single map can be shared by
+ * any number of filters using the same parameters.
+ * 
+ * @author bmanuel
+ */
+public final class DistortionMap extends Filter<DistortionMap> {
+	private final FrameBuffer map;
+	private float distortion, zoom;
+	private boolean dirty;
+
+	public enum Param implements Parameter {
+		// @formatter:off
+		Distortion("distortion",0),
+		Zoom("zoom",0)
+		;
+		// @formatter:on
+
+		private final String mnemonic;
+		private int elementSize;
+
+		private Param( String m, int elementSize ) {
+			this.mnemonic = m;
+			this.elementSize = elementSize;
+		}
+
+		@Override
+		public String mnemonic() {
+			return this.mnemonic;
+		}
+
+		@Override
+		public int arrayElementSize() {
+			return this.elementSize;
+		}
+	}
+
+	/** Creates a new distortion map, its size shall match the size of the output of the filters looking it up. */
+	public DistortionMap( int width, int height ) {
+		super( ShaderLoader.fromFile( "screenspace", "distortion-map" ) );
+
+		map = new FrameBuffer( Format.RGBA8888, width, height, false );
+
+		// packed coordinates can't be interpolated, the map is looked up at exact texel centers
+		Texture t = map.getColorBufferTexture();
+		t.setFilter( TextureFilter.Nearest, TextureFilter.Nearest );
+		t.setWrap( TextureWrap.ClampToEdge, TextureWrap.ClampToEdge );
+		setOutput( map );
+
+		distortion = 0.3f;
+		zoom = 1f;
+		rebind();
+	}
+
+	/** Enqueues the program needed by this filter. */
+	public static void enqueueShaders( ShaderWarmup warmup ) {
+		warmup.add( "screenspace", "distortion-map" );
+	}
+
+	@Override
+	public void dispose() {
+		super.dispose();
+		map.dispose();
+	}
+
+	public void setDistortion( float distortion ) {
+		if( this.distortion != distortion ) {
+			this.distortion = distortion;
+			setParam( Param.Distortion, distortion );
+			dirty = true;
+		}
+	}
+
+	public void setZoom( float zoom ) {
+		if( this.zoom != zoom ) {
+			this.zoom = zoom;
+			setParam( Param.Zoom, zoom );
+			dirty = true;
+		}
+	}
+
+	public float getDistortion() {
+		return distortion;
+	}
+
+	public float getZoom() {
+		return zoom;
+	}
+
+	/** Returns the map texture, as baked by the last invocation of {@link #bake()}. */
+	public Texture getTexture() {
+		return map.getColorBufferTexture();
+	}
+
+	/** Bakes the map if its parameters changed or its contents got lost, leaving the viewport set to the map size. */
+	public void bake() {
+		if( !dirty ) {
+			return;
+		}
+
+		// coordinates are written as they are
+		boolean blendingWasEnabled = PostProcessor.isStateEnabled( GL20.GL_BLEND );
+		Gdx.gl.glDisable( GL20.GL_BLEND );
+
+		render();
+		dirty = false;
+
+		if( blendingWasEnabled ) {
+			Gdx.gl.glEnable( GL20.GL_BLEND );
+		}
+	}
+
+	/** Uploads the parameters again and marks the map as to be baked again, its contents being lost with the context. */
+	@Override
+	public void rebind() {
+		setParams( Param.Distortion, distortion );
+		setParams( Param.Zoom, zoom );
+		endParams();
+		dirty = true;
+	}
+
+	@Override
+	protected void onBeforeRender() {
+	}
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.filters;
+
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.bitfire.postprocessing.PostProcessor;
+import com.bitfire.postprocessing.utils.FrameBufferPool;
+import com.bitfire.postprocessing.utils.PingPongBuffer;
+import com.bitfire.utils.ShaderWarmup;
+
+/**
+ * Implements the dual filtering blur: the source is progressively downsampled to half the resolution for the specified
+ * number of levels, then upsampled back, filtering at each step. Since every level costs a quarter of the previous one,
+ * the cost is dominated by the first level and grows only logarithmically with the blur radius.
+ * 
+ * The intermediate levels are transient framebuffers obtained from the {@link PostProcessor#getFramebufferPool()} pool
+ * and given back as soon as the blur is complete.
+ * 
+ * @author bmanuel
+ */
+public final class DualFilter extends MultipassFilter {
+	private final DualFilterPass down, up;
+	private final Format format;
+	private final int width, height;
+	private final FrameBuffer[] levels;
+	private int levelCount;
+	private float offset;
+
+	/**
+	 * Creates a new dual filtering blur for buffers of the specified size, if rgbm is true it will operate on
+	 * RGBM-encoded buffers.
+	 */
+	public DualFilter( int width, int height, boolean rgbm ) {
+		this.width = width;
+		this.height = height;
+
+		// RGBM needs the alpha channel to store the multiplier
+		Format fbFormat = PostProcessor.getFramebufferFormat();
+		this.format = (rgbm || fbFormat == null) ? Format.RGBA8888 : fbFormat;
+
+		down = new DualFilterPass( false, rgbm );
+		up = new DualFilterPass( true, rgbm );
+		levels = new FrameBuffer[ maxLevels( width, height ) ];
+
+		levelCount = 1;
+		offset = 1f;
+	}
+
+	/** Enqueues the programs needed by a filter constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean rgbm ) {
+		DualFilterPass.enqueueShaders( warmup, false, rgbm );
+		DualFilterPass.enqueueShaders( warmup, true, rgbm );
+	}
+
+	// stops before any dimension gets smaller than two pixels
+	private static int maxLevels( int width, int height ) {
+		int levels = 0;
+		while( (width >> (levels + 1)) >= 2 && (height >> (levels + 1)) >= 2 ) {
+			levels++;
+		}
+
+		return Math.max( 1, levels );
+	}
+
+	public void dispose() {
+		down.dispose();
+		up.dispose();
+	}
+
+	/** Sets the number of levels to downsample to, the more levels the wider the blur. */
+	public void setLevels( int levels ) {
+		this.levelCount = Math.max( 1, Math.min( levels, this.levels.length ) );
+	}
+
+	/** Sets the sampling distance, in texels, at each level: values greater than 1 will widen the blur at no cost. */
+	public void setOffset( float offset ) {
+		this.offset = offset;
+	}
+
+	public int getLevels() {
+		return levelCount;
+	}
+
+	public float getOffset() {
+		return offset;
+	}
+
+	@Override
+	public void rebind() {
+		down.rebind();
+		up.rebind();
+	}
+
+	@Override
+	public void render( PingPongBuffer buffer ) {
+		FrameBufferPool pool = PostProcessor.getFramebufferPool();
+
+		// the result will be written to the buffer's next target, as any other pass
+		Texture source = buffer.capture();
+
+		// downsample
+		Texture input = source;
+		int w = width, h = height;
+		for( int i = 0; i < levelCount; i++ ) {
+			down.setTexelOffset( offset / w, offset / h );
+
+			w = Math.max( 1, w / 2 );
+			h = Math.max( 1, h / 2 );
+			levels[i] = pool.obtain( format, w, h );
+
+			down.setInput( input ).setOutput( levels[i] ).render();
+			input = levels[i].getColorBufferTexture();
+		}
+
+		// upsample back, the last pass writing to the buffer
+		for( int i = levelCount - 1; i >= 0; i-- ) {
+			FrameBuffer target = (i > 0) ? levels[i - 1] : buffer.getResultBuffer();
+			up.setTexelOffset( offset / levels[i].getWidth(), offset / levels[i].getHeight() );
+			up.setInput( levels[i] ).setOutput( target ).render();
+		}
+
+		for( int i = 0; i < levelCount; i++ ) {
+			pool.free( levels[i] );
+			levels[i] = null;
+		}
+	}
+}
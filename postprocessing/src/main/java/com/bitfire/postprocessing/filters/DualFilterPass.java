@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.filters;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.math.Vector2;
+import com.bitfire.postprocessing.utils.TextureBinder;
+import com.bitfire.utils.ShaderVariants;
+import com.bitfire.utils.ShaderWarmup;
+
+/**
+ * A single downsampling or upsampling pass of the dual filtering blur, see {@link DualFilter}.
+ * 
+ * @author bmanuel
+ */
+public final class DualFilterPass extends Filter<DualFilterPass> {
+	private static final ShaderVariants Variants = new ShaderVariants( "screenspace", "dual-filter", "UPSAMPLE",
+			"ACCUMULATE", "ENCODE_RGBM" );
+	private static final int Upsample = Variants.feature( "UPSAMPLE" );
+	private static final int Accumulate = Variants.feature( "ACCUMULATE" );
+	private static final int EncodeRgbm = Variants.feature( "ENCODE_RGBM" );
+
+	public enum Param implements Parameter {
+		// @formatter:off
+		Texture( "u_texture0", 0 ),
+		Texture1( "u_texture1", 0 ),
+		TexelOffset( "TexelOffset", 2 ),
+		Weight( "Weight", 0 ),
+		CurrentWeight( "CurrentWeight", 0 );
+		// @formatter:on
+
+		private String mnemonic;
+		private int elementSize;
+
+		private Param( String mnemonic, int elementSize ) {
+			this.mnemonic = mnemonic;
+			this.elementSize = elementSize;
+		}
+
+		@Override
+		public String mnemonic() {
+			return this.mnemonic;
+		}
+
+		@Override
+		public int arrayElementSize() {
+			return this.elementSize;
+		}
+	}
+
+	private final Vector2 texelOffset = new Vector2();
+	private final boolean upsample, accumulate;
+	private float weight, currentWeight;
+	private Texture current = null;
+
+	/** Creates a new pass, if rgbm is true it will operate on RGBM-encoded buffers. */
+	public DualFilterPass( boolean upsample, boolean rgbm ) {
+		this( upsample, false, rgbm );
+	}
+
+	/**
+	 * Creates a new pass, if accumulate is true the pass shall be an upsampling one and its weighted result will be
+	 * added to the weighted contents of the current level, see {@link #setInput(Texture, Texture)}.
+	 */
+	public DualFilterPass( boolean upsample, boolean accumulate, boolean rgbm ) {
+		super( Variants.get( permutation( upsample, accumulate, rgbm ) ) );
+		this.upsample = upsample || accumulate;
+		this.accumulate = accumulate;
+		weight = 1f;
+		currentWeight = 1f;
+		rebind();
+	}
+
+	/** Enqueues the program needed by a filter constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean upsample, boolean rgbm ) {
+		enqueueShaders( warmup, upsample, false, rgbm );
+	}
+
+	/** Enqueues the program needed by a filter constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean upsample, boolean accumulate, boolean rgbm ) {
+		Variants.enqueue( warmup, permutation( upsample, accumulate, rgbm ) );
+	}
+
+	private static int permutation( boolean upsample, boolean accumulate, boolean rgbm ) {
+		return (upsample || accumulate ? Upsample : 0) | (accumulate ? Accumulate : 0) | (rgbm ? EncodeRgbm : 0);
+	}
+
+	/** Sets the level to be upsampled and the current level contents to accumulate to, for accumulating passes. */
+	public DualFilterPass setInput( Texture level, Texture current ) {
+		this.current = current;
+		return setInput( level );
+	}
+
+	/** Sets the weights of the upsampled level and of the current level contents, for upsampling passes. */
+	public void setWeights( float weight, float currentWeight ) {
+		this.weight = weight;
+		this.currentWeight = currentWeight;
+
+		if( upsample ) {
+			setParams( Param.Weight, weight );
+			if( accumulate ) {
+				setParams( Param.CurrentWeight, currentWeight );
+			}
+
+			endParams();
+		}
+	}
+
+	/** Sets the sampling distance, in source texture coordinates. */
+	public void setTexelOffset( float x, float y ) {
+		texelOffset.set( x, y );
+		setParam( Param.TexelOffset, texelOffset );
+	}
+
+	public Vector2 getTexelOffset() {
+		return texelOffset;
+	}
+
+	@Override
+	public void rebind() {
+		setParams( Param.Texture, u_texture0 );
+		setParams( Param.TexelOffset, texelOffset );
+
+		if( upsample ) {
+			setParams( Param.Weight, weight );
+		}
+
+		if( accumulate ) {
+			setParams( Param.Texture1, u_texture1 );
+			setParams( Param.CurrentWeight, currentWeight );
+		}
+
+		endParams();
+	}
+
+	@Override
+	protected void onBeforeRender() {
+		TextureBinder.bind( inputTexture, u_texture0 );
+		if( accumulate ) {
+			TextureBinder.bind( current, u_texture1 );
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.filters;
+
+import com.badlogic.gdx.math.Vector2;
+import com.bitfire.postprocessing.utils.TextureBinder;
+import com.bitfire.utils.ShaderVariants;
+import com.bitfire.utils.ShaderWarmup;
+
+/**
+ * Extracts the emissive areas to be bloomed from an emission buffer, rendered by the application with the color of the
+ * glowing objects only, or from the scene itself, weighting its colors by its alpha channel: contrary to
+ * {@link Threshold}, only what has been explicitly marked as glowing will be extracted, no matter how bright it is.
+ * 
+ * @author bmanuel
+ */
+public final class Emission extends Filter<Emission> {
+	private static final ShaderVariants Variants = new ShaderVariants( "screenspace", "emission", "ALPHA_MASK",
+			"DOWNSAMPLE", "ENCODE_RGBM" );
+	private static final int AlphaMask = Variants.feature( "ALPHA_MASK" );
+	private static final int Downsample = Variants.feature( "DOWNSAMPLE" );
+	private static final int EncodeRgbm = Variants.feature( "ENCODE_RGBM" );
+
+	public enum Param implements Parameter {
+		// @formatter:off
+		Texture( "u_texture0", 0 ),
+		Intensity( "Intensity", 0 ),
+		TexelOffset( "TexelOffset", 2 );
+		// @formatter:on
+
+		private String mnemonic;
+		private int elementSize;
+
+		private Param( String mnemonic, int elementSize ) {
+			this.mnemonic = mnemonic;
+			this.elementSize = elementSize;
+		}
+
+		@Override
+		public String mnemonic() {
+			return this.mnemonic;
+		}
+
+		@Override
+		public int arrayElementSize() {
+			return this.elementSize;
+		}
+	}
+
+	private final boolean alphaMask, rgbm;
+	private float intensity = 1f;
+	private boolean downsample = false;
+	private final Vector2 texelOffset = new Vector2();
+
+	/**
+	 * Creates a new emission filter: if alphaMask is true the input is expected to be the scene, its colors weighted by
+	 * its alpha channel, otherwise the input is expected to be an emission buffer. If encodeRgbm is true the output will
+	 * be encoded as RGBM.
+	 */
+	public Emission( boolean alphaMask, boolean encodeRgbm ) {
+		super( Variants, permutation( alphaMask, encodeRgbm ) );
+		this.alphaMask = alphaMask;
+		this.rgbm = encodeRgbm;
+		rebind();
+
+		// no downsampling yet
+		updatePermutation();
+	}
+
+	/** Enqueues the programs needed by a filter constructed with the same parameters, specializations included. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean alphaMask, boolean encodeRgbm ) {
+		int generic = permutation( alphaMask, encodeRgbm );
+		Variants.enqueue( warmup, generic );
+		Variants.enqueue( warmup, generic & ~Downsample );
+	}
+
+	private static int permutation( boolean alphaMask, boolean encodeRgbm ) {
+		return (alphaMask ? AlphaMask : 0) | (encodeRgbm ? EncodeRgbm : 0) | Downsample;
+	}
+
+	/** Downsampling is compiled out when not enabled. */
+	@Override
+	protected int getSpecializedPermutation() {
+		int result = permutation( alphaMask, rgbm );
+		if( !downsample ) {
+			result &= ~Downsample;
+		}
+
+		return result;
+	}
+
+	/** Sets the intensity the emission is scaled by. */
+	public void setIntensity( float intensity ) {
+		this.intensity = intensity;
+		setParam( Param.Intensity, intensity );
+	}
+
+	/**
+	 * Enables downsampling, averaging the whole footprint of each texel of the output buffer of the specified size, see
+	 * {@link Threshold#enableDownsampling(int, int)}.
+	 */
+	public void enableDownsampling( int outputWidth, int outputHeight ) {
+		downsample = true;
+		texelOffset.set( 0.25f / (float)outputWidth, 0.25f / (float)outputHeight );
+		updatePermutation();
+		if( hasFeature( Downsample ) ) {
+			setParam( Param.TexelOffset, texelOffset );
+		}
+	}
+
+	public void disableDownsampling() {
+		downsample = false;
+		updatePermutation();
+	}
+
+	public float getIntensity() {
+		return intensity;
+	}
+
+	public boolean isAlphaMask() {
+		return alphaMask;
+	}
+
+	public boolean isDownsamplingEnabled() {
+		return downsample;
+	}
+
+	@Override
+	public void rebind() {
+		setParams( Param.Texture, u_texture0 );
+		setParams( Param.Intensity, intensity );
+		if( hasFeature( Downsample ) ) {
+			setParams( Param.TexelOffset, texelOffset );
+		}
+
+		endParams();
+	}
+
+	@Override
+	protected void onBeforeRender() {
+		TextureBinder.bind( inputTexture, u_texture0 );
+	}
+}
@@ -23,7 +23,11 @@ import com.badlogic.gdx.math.Matrix3;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.ObjectMap;
 import com.bitfire.postprocessing.utils.FullscreenQuad;
+import com.bitfire.utils.ShaderLoader;
+import com.bitfire.utils.ShaderVariants;
 
 /** The base class for any single-pass filter. */
 
@@ -43,13 +47,40 @@ public abstract class Filter<T> {
 	protected static final int u_texture2 = 2;
 	protected static final int u_texture3 = 3;
 
+	// programs can be shared among filters, so keep track of which one uploaded its own
+	// parameters last: any other filter will need to upload them again before using it
+	private static final ObjectMap<ShaderProgram, Filter<?>> owners = new ObjectMap<ShaderProgram, Filter<?>>();
+
 	protected Texture inputTexture = null;
 	protected FrameBuffer outputBuffer = null;
 	protected ShaderProgram program = null;
 	private boolean programBegan = false;
 
+	// specialization support, only available to filters built from shader variants
+	private ShaderVariants variants = null;
+	private IntMap<ShaderProgram> permutations = null;
+	private int genericPermutation, permutation;
+	private boolean specializationEnabled = true;
+
 	public Filter( ShaderProgram program ) {
 		this.program = program;
+
+		// the concrete filter is going to upload its parameters while being constructed
+		owners.put( program, this );
+	}
+
+	/**
+	 * Builds the filter on the specified, generic, permutation of the program: concrete filters can then switch to a
+	 * more specialized permutation by overriding {@link #getSpecializedPermutation()} and invoking
+	 * {@link #updatePermutation()} whenever the parameters it depends on change.
+	 */
+	public Filter( ShaderVariants variants, int genericPermutation ) {
+		this( variants.get( genericPermutation ) );
+		this.variants = variants;
+		this.genericPermutation = genericPermutation;
+		this.permutation = genericPermutation;
+		this.permutations = new IntMap<ShaderProgram>();
+		permutations.put( genericPermutation, program );
 	}
 
 	public T setInput( Texture input ) {
@@ -67,18 +98,103 @@ public abstract class Filter<T> {
 	}
 
 	public void dispose() {
-		program.dispose();
+		if( permutations == null ) {
+			disown( program );
+			ShaderLoader.release( program );
+			return;
+		}
+
+		for( ShaderProgram p : permutations.values() ) {
+			disown( p );
+			ShaderLoader.release( p );
+		}
+
+		permutations.clear();
 	}
 
-	/** FIXME add comment */
+	/**
+	 * Enables or disables the use of specialized permutations, disabling it will make the filter always use the generic
+	 * one, which is best suited for animated parameters, eg. to avoid swapping programs every time a parameter crosses a
+	 * special value.
+	 */
+	public void setSpecializationEnabled( boolean enabled ) {
+		specializationEnabled = enabled;
+		updatePermutation();
+	}
+
+	public boolean isSpecializationEnabled() {
+		return specializationEnabled;
+	}
+
+	/**
+	 * Returns the permutation best suited for the current parameter values, where the features that would have no
+	 * visible effect are compiled out: by default this is the generic permutation.
+	 */
+	protected int getSpecializedPermutation() {
+		return genericPermutation;
+	}
+
+	/**
+	 * Switches to the specialized permutation, or back to the generic one if specialization is disabled. Permutations
+	 * are compiled the first time they are needed and kept until the filter is disposed, so that switching back and
+	 * forth is cheap: parameters are uploaded again via {@link #rebind()} as soon as the new program gets used.
+	 */
+	protected void updatePermutation() {
+		if( permutations == null ) {
+			return;
+		}
+
+		int wanted = specializationEnabled ? getSpecializedPermutation() : genericPermutation;
+		if( wanted == permutation ) {
+			return;
+		}
+
+		ShaderProgram p = permutations.get( wanted );
+		if( p == null ) {
+			p = variants.get( wanted );
+			permutations.put( wanted, p );
+		}
+
+		endParams();
+
+		// this program will miss any parameter set in the meantime
+		disown( program );
+		program = p;
+		permutation = wanted;
+	}
+
+	/** Returns whether the feature is enabled in the program currently in use. */
+	protected boolean hasFeature( int feature ) {
+		return (permutation & feature) != 0;
+	}
+
+	private void disown( ShaderProgram p ) {
+		if( owners.get( p ) == this ) {
+			owners.remove( p );
+		}
+	}
+
+	/**
+	 * Concrete filters shall upload all of their parameters to the program: this is invoked when the OpenGL context is
+	 * lost and whenever another filter sharing the same program did upload its own parameters.
+	 */
 	public abstract void rebind();
 
+	/** Ensures the program is holding the parameters of this filter, uploading them again if needed. */
+	private void claim() {
+		if( owners.get( program ) != this ) {
+			owners.put( program, this );
+			rebind();
+		}
+	}
+
 	/* Sets the parameter to the specified value for this filter.
 	 * This is for one-off operations since the shader is being bound and unbound once per call: for
 	 * a batch-ready version of this fuction see and use setParams instead. */
 
 	// int
 	protected void setParam( Parameter param, int value ) {
+		claim();
 		program.begin();
 		program.setUniformi( param.mnemonic(), value );
 		program.end();
@@ -86,6 +202,7 @@ public abstract class Filter<T> {
 
 	// float
 	protected void setParam( Parameter param, float value ) {
+		claim();
 		program.begin();
 		program.setUniformf( param.mnemonic(), value );
 		program.end();
@@ -93,6 +210,7 @@ public abstract class Filter<T> {
 
 	// vec2
 	protected void setParam( Parameter param, Vector2 value ) {
+		claim();
 		program.begin();
 		program.setUniformf( param.mnemonic(), value );
 		program.end();
@@ -100,6 +218,7 @@ public abstract class Filter<T> {
 
 	// vec3
 	protected void setParam( Parameter param, Vector3 value ) {
+		claim();
 		program.begin();
 		program.setUniformf( param.mnemonic(), value );
 		program.end();
@@ -107,6 +226,7 @@ public abstract class Filter<T> {
 
 	// mat3
 	protected T setParam( Parameter param, Matrix3 value ) {
+		claim();
 		program.begin();
 		program.setUniformMatrix( param.mnemonic(), value );
 		program.end();
@@ -115,6 +235,7 @@ public abstract class Filter<T> {
 
 	// mat4
 	protected T setParam( Parameter param, Matrix4 value ) {
+		claim();
 		program.begin();
 		program.setUniformMatrix( param.mnemonic(), value );
 		program.end();
@@ -123,6 +244,7 @@ public abstract class Filter<T> {
 
 	// float[], vec2[], vec3[], vec4[]
 	protected T setParamv( Parameter param, float[] values, int offset, int length ) {
+		claim();
 		program.begin();
 
 		switch( param.arrayElementSize() ) {
@@ -153,6 +275,7 @@ public abstract class Filter<T> {
 	// float
 	protected T setParams( Parameter param, float value ) {
 		if( !programBegan ) {
+			claim();
 			programBegan = true;
 			program.begin();
 		}
@@ -163,6 +286,7 @@ public abstract class Filter<T> {
 	// int version
 	protected T setParams( Parameter param, int value ) {
 		if( !programBegan ) {
+			claim();
 			programBegan = true;
 			program.begin();
 		}
@@ -173,6 +297,7 @@ public abstract class Filter<T> {
 	// vec2 version
 	protected T setParams( Parameter param, Vector2 value ) {
 		if( !programBegan ) {
+			claim();
 			programBegan = true;
 			program.begin();
 		}
@@ -183,6 +308,7 @@ public abstract class Filter<T> {
 	// vec3 version
 	protected T setParams( Parameter param, Vector3 value ) {
 		if( !programBegan ) {
+			claim();
 			programBegan = true;
 			program.begin();
 		}
@@ -193,6 +319,7 @@ public abstract class Filter<T> {
 	// mat3
 	protected T setParams( Parameter param, Matrix3 value ) {
 		if( !programBegan ) {
+			claim();
 			programBegan = true;
 			program.begin();
 		}
@@ -203,6 +330,7 @@ public abstract class Filter<T> {
 	// mat4
 	protected T setParams( Parameter param, Matrix4 value ) {
 		if( !programBegan ) {
+			claim();
 			programBegan = true;
 			program.begin();
 		}
@@ -213,6 +341,7 @@ public abstract class Filter<T> {
 	// float[], vec2[], vec3[], vec4[]
 	protected T setParamsv( Parameter param, float[] values, int offset, int length ) {
 		if( !programBegan ) {
+			claim();
 			programBegan = true;
 			program.begin();
 		}
@@ -258,6 +387,8 @@ public abstract class Filter<T> {
 	}
 
 	private void realRender() {
+		claim();
+
 		// gives a chance to filters to perform needed operations just before the rendering operation take place.
 		onBeforeRender();
 
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.filters;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.bitfire.postprocessing.utils.TextureBinder;
+import com.bitfire.utils.ShaderLoader;
+import com.bitfire.utils.ShaderWarmup;
+
+/** Linearly interpolates between two sources, the amount being the weight of the second one. */
+public final class Mix extends Filter<Mix> {
+	private Texture inputTexture2 = null;
+	private float amount;
+
+	public enum Param implements Parameter {
+		// @formatter:off
+		Texture0("u_texture0",0),
+		Texture1("u_texture1",0),
+		Amount("Amount",0)
+		;
+		// @formatter:on
+
+		private final String mnemonic;
+		private int elementSize;
+
+		private Param( String m, int elementSize ) {
+			this.mnemonic = m;
+			this.elementSize = elementSize;
+		}
+
+		@Override
+		public String mnemonic() {
+			return this.mnemonic;
+		}
+
+		@Override
+		public int arrayElementSize() {
+			return this.elementSize;
+		}
+	}
+
+	public Mix() {
+		super( ShaderLoader.fromFile( "screenspace", "mix" ) );
+		amount = 0.5f;
+		rebind();
+	}
+
+	/** Enqueues the program needed by this filter. */
+	public static void enqueueShaders( ShaderWarmup warmup ) {
+		warmup.add( "screenspace", "mix" );
+	}
+
+	public Mix setInput( Texture texture1, Texture texture2 ) {
+		this.inputTexture = texture1;
+		this.inputTexture2 = texture2;
+		return this;
+	}
+
+	/** Sets the weight of the second source, uploading it only if it actually changed. */
+	public void setAmount( float amount ) {
+		if( this.amount != amount ) {
+			this.amount = amount;
+			setParam( Param.Amount, amount );
+		}
+	}
+
+	public float getAmount() {
+		return amount;
+	}
+
+	@Override
+	public void rebind() {
+		setParams( Param.Texture0, u_texture0 );
+		setParams( Param.Texture1, u_texture1 );
+		setParams( Param.Amount, amount );
+		endParams();
+	}
+
+	@Override
+	protected void onBeforeRender() {
+		TextureBinder.bind( inputTexture, u_texture0 );
+		TextureBinder.bind( inputTexture2, u_texture1 );
+	}
+}
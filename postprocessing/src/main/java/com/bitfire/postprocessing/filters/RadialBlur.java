@@ -16,7 +16,9 @@
 
 package com.bitfire.postprocessing.filters;
 
+import com.bitfire.postprocessing.utils.TextureBinder;
 import com.bitfire.utils.ShaderLoader;
+import com.bitfire.utils.ShaderWarmup;
 
 public final class RadialBlur extends Filter<RadialBlur> {
 	// ctrl quality
@@ -74,8 +76,7 @@ public final class RadialBlur extends Filter<RadialBlur> {
 	}
 
 	public RadialBlur( Quality quality ) {
-		super( ShaderLoader.fromFile( "radial-blur", "radial-blur", "#define BLUR_LENGTH " + quality.length
-				+ "\n#define ONE_ON_BLUR_LENGTH " + 1f / (float)quality.length ) );
+		super( ShaderLoader.fromFile( "radial-blur", "radial-blur", "", defines( quality ) ) );
 		this.blur_len = quality.length;
 		rebind();
 		setOrigin( 0.5f, 0.5f );
@@ -87,6 +88,15 @@ public final class RadialBlur extends Filter<RadialBlur> {
 		this( Quality.Low );
 	}
 
+	/** Enqueues the program needed by a filter constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, Quality quality ) {
+		warmup.add( "radial-blur", "radial-blur", "", defines( quality ) );
+	}
+
+	private static String defines( Quality quality ) {
+		return "#define BLUR_LENGTH " + quality.length + "\n#define ONE_ON_BLUR_LENGTH " + 1f / (float)quality.length;
+	}
+
 	public void setOrigin( float x, float y ) {
 		this.x = x;
 		this.y = y;
@@ -123,7 +133,7 @@ public final class RadialBlur extends Filter<RadialBlur> {
 
 	@Override
 	protected void onBeforeRender() {
-		inputTexture.bind( u_texture0 );
+		TextureBinder.bind( inputTexture, u_texture0 );
 	}
 
 	@Override
@@ -16,14 +16,22 @@
 
 package com.bitfire.postprocessing.filters;
 
-import com.bitfire.utils.ShaderLoader;
+import com.bitfire.postprocessing.utils.TextureBinder;
+import com.bitfire.utils.ShaderVariants;
+import com.bitfire.utils.ShaderWarmup;
 
 public final class RadialDistortion extends Filter<RadialDistortion> {
+	private static final ShaderVariants Variants = new ShaderVariants( "screenspace", "radial-distortion",
+			"DISTORTION_MAP" );
+	private static final int UseDistortionMap = Variants.feature( "DISTORTION_MAP" );
+
 	private float zoom, distortion;
+	private DistortionMap map;
 
 	public enum Param implements Parameter {
 		// @formatter:off
 		Texture0("u_texture0",0),
+		TexDistortionMap("u_texture1",0),
 		Distortion("distortion",0),
 		Zoom("zoom",0)
 		;
@@ -49,20 +57,50 @@ public final class RadialDistortion extends Filter<RadialDistortion> {
 	}
 
 	public RadialDistortion() {
-		super( ShaderLoader.fromFile( "screenspace", "radial-distortion" ) );
+		super( Variants, 0 );
+		map = null;
 		rebind();
 		setDistortion( 0.3f );
 		setZoom( 1f );
 	}
 
+	/** Enqueues the programs needed by this filter, specializations included. */
+	public static void enqueueShaders( ShaderWarmup warmup ) {
+		Variants.enqueue( warmup, 0 );
+		Variants.enqueue( warmup, UseDistortionMap );
+	}
+
+	/** The distortion is looked up from the map whenever there is one. */
+	@Override
+	protected int getSpecializedPermutation() {
+		return map != null ? UseDistortionMap : 0;
+	}
+
+	/**
+	 * Sets the map to look up the distorted coordinates from, or null to evaluate the distortion per-pixel: the map
+	 * shall be baked with the same parameters as this filter, see {@link DistortionMap#bake()}.
+	 */
+	public void setDistortionMap( DistortionMap map ) {
+		this.map = map;
+		updatePermutation();
+	}
+
+	public DistortionMap getDistortionMap() {
+		return map;
+	}
+
 	public void setDistortion( float distortion ) {
 		this.distortion = distortion;
-		setParam( Param.Distortion, this.distortion );
+		if( !hasFeature( UseDistortionMap ) ) {
+			setParam( Param.Distortion, this.distortion );
+		}
 	}
 
 	public void setZoom( float zoom ) {
 		this.zoom = zoom;
-		setParam( Param.Zoom, this.zoom );
+		if( !hasFeature( UseDistortionMap ) ) {
+			setParam( Param.Zoom, this.zoom );
+		}
 	}
 
 	public float getDistortion() {
@@ -75,14 +113,21 @@ public final class RadialDistortion extends Filter<RadialDistortion> {
 
 	@Override
 	protected void onBeforeRender() {
-		inputTexture.bind( u_texture0 );
+		TextureBinder.bind( inputTexture, u_texture0 );
+		if( hasFeature( UseDistortionMap ) ) {
+			TextureBinder.bind( map.getTexture(), u_texture1 );
+		}
 	}
 
 	@Override
 	public void rebind() {
 		setParams( Param.Texture0, u_texture0 );
-		setParams( Param.Distortion, distortion );
-		setParams( Param.Zoom, zoom );
+		if( hasFeature( UseDistortionMap ) ) {
+			setParams( Param.TexDistortionMap, u_texture1 );
+		} else {
+			setParams( Param.Distortion, distortion );
+			setParams( Param.Zoom, zoom );
+		}
 
 		endParams();
 	}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.filters;
+
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.bitfire.postprocessing.PostProcessor;
+import com.bitfire.postprocessing.utils.FrameBufferPool;
+import com.bitfire.postprocessing.utils.PingPongBuffer;
+import com.bitfire.utils.ShaderWarmup;
+
+/**
+ * Adds horizontal, anamorphic-like, streaks to the source: the source is downsampled vertically only, down to a
+ * fraction of its height, then blurred horizontally by a chain of passes, each one sampling taps farther apart than
+ * the previous one, finally the result is stretched back and added to the source. Very long streaks are obtained with
+ * a handful of passes on tiny buffers, instead of a very wide kernel at full height.
+ * 
+ * The intermediate buffers are transient framebuffers obtained from the {@link PostProcessor#getFramebufferPool()} pool
+ * and given back as soon as the result is complete.
+ * 
+ * @author bmanuel
+ */
+public final class Streak extends MultipassFilter {
+	/** The streaks are computed at this fraction of the source height. */
+	public static final int HeightDivisor = 16;
+
+	private static final int Taps = 7;
+
+	private final DualFilterPass down, accumulate;
+	private final Convolve1D blur;
+	private final Format format;
+	private final int width, height;
+	private final FrameBuffer[] levels, targets;
+	private final float[] weights, offsets;
+	private int passes;
+	private float attenuation, intensity;
+
+	/**
+	 * Creates a new streak filter for buffers of the specified size, if rgbm is true it will operate on RGBM-encoded
+	 * buffers.
+	 */
+	public Streak( int width, int height, boolean rgbm ) {
+		this.width = width;
+		this.height = height;
+
+		// RGBM needs the alpha channel to store the multiplier
+		Format fbFormat = PostProcessor.getFramebufferFormat();
+		this.format = (rgbm || fbFormat == null) ? Format.RGBA8888 : fbFormat;
+
+		// halve the height until reaching the divisor, or a single pixel
+		int count = 0;
+		while( (1 << count) < HeightDivisor && (height >> (count + 1)) >= 1 ) {
+			count++;
+		}
+
+		levels = new FrameBuffer[ count ];
+		targets = new FrameBuffer[ 2 ];
+
+		weights = new float[ Taps ];
+		offsets = new float[ Taps * 2 ];
+
+		down = new DualFilterPass( false, rgbm );
+		accumulate = new DualFilterPass( true, true, rgbm );
+		blur = new Convolve1D( Taps, weights, offsets, rgbm );
+
+		passes = 3;
+		intensity = 1f;
+		setAttenuation( 0.8f );
+	}
+
+	/** Enqueues the programs needed by a filter constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean rgbm ) {
+		DualFilterPass.enqueueShaders( warmup, false, rgbm );
+		DualFilterPass.enqueueShaders( warmup, true, true, rgbm );
+		Convolve1D.enqueueShaders( warmup, Taps, rgbm );
+	}
+
+	public void dispose() {
+		down.dispose();
+		accumulate.dispose();
+		blur.dispose();
+	}
+
+	/**
+	 * Sets the number of horizontal passes, each one sampling taps seven times farther apart than the previous one: the
+	 * length of the streaks grows exponentially with the number of passes.
+	 */
+	public void setPasses( int passes ) {
+		this.passes = Math.max( 1, passes );
+	}
+
+	/** Sets how quickly, in the (0,1] range, the streaks fade away from their source: lower values fade faster. */
+	public void setAttenuation( float attenuation ) {
+		this.attenuation = attenuation;
+
+		// symmetric taps, exponentially fading away from the center
+		int radius = Taps / 2;
+		float total = 0;
+		for( int i = 0; i < Taps; i++ ) {
+			weights[i] = (float)Math.pow( attenuation, Math.abs( i - radius ) );
+			total += weights[i];
+		}
+
+		for( int i = 0; i < Taps; i++ ) {
+			weights[i] /= total;
+		}
+	}
+
+	/** Sets the intensity of the streaks added to the source. */
+	public void setIntensity( float intensity ) {
+		this.intensity = intensity;
+	}
+
+	public int getPasses() {
+		return passes;
+	}
+
+	public float getAttenuation() {
+		return attenuation;
+	}
+
+	public float getIntensity() {
+		return intensity;
+	}
+
+	@Override
+	public void rebind() {
+		down.rebind();
+		accumulate.rebind();
+		blur.rebind();
+	}
+
+	@Override
+	public void render( PingPongBuffer buffer ) {
+		FrameBufferPool pool = PostProcessor.getFramebufferPool();
+
+		// the result will be written to the buffer's next target, as any other pass
+		Texture source = buffer.capture();
+
+		// downsample vertically only, the horizontal offset being zero the taps are
+		// merged into vertical ones
+		Texture input = source;
+		int h = height;
+		for( int i = 0; i < levels.length; i++ ) {
+			down.setTexelOffset( 0, 1f / h );
+
+			h = Math.max( 1, h / 2 );
+			levels[i] = pool.obtain( format, width, h );
+
+			down.setInput( input ).setOutput( levels[i] ).render();
+			input = levels[i].getColorBufferTexture();
+		}
+
+		// blur horizontally, back and forth between two buffers
+		targets[0] = pool.obtain( format, width, h );
+		targets[1] = pool.obtain( format, width, h );
+
+		int radius = Taps / 2;
+		float spacing = 1f;
+		for( int p = 0; p < passes; p++ ) {
+			for( int i = 0; i < Taps; i++ ) {
+				offsets[i * 2] = (i - radius) * spacing / width;
+				offsets[i * 2 + 1] = 0;
+			}
+
+			FrameBuffer target = targets[p % 2];
+			blur.rebind();
+			blur.setInput( input ).setOutput( target ).render();
+
+			input = target.getColorBufferTexture();
+			spacing *= Taps;
+		}
+
+		// stretch the streaks back to the full height, adding them to the source
+		accumulate.setTexelOffset( 0, 1f / h );
+		accumulate.setWeights( intensity, 1f );
+		accumulate.setInput( input, source ).setOutput( buffer.getResultBuffer() ).render();
+
+		for( int i = 0; i < levels.length; i++ ) {
+			pool.free( levels[i] );
+			levels[i] = null;
+		}
+
+		for( int i = 0; i < targets.length; i++ ) {
+			pool.free( targets[i] );
+			targets[i] = null;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.filters;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.Texture.TextureWrap;
+import com.badlogic.gdx.graphics.glutils.FloatFrameBuffer;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.bitfire.postprocessing.utils.PingPongBuffer;
+import com.bitfire.utils.ShaderWarmup;
+
+/**
+ * Implements a box blur of any size at constant cost: a summed-area table of the source is built into floating point
+ * buffers through log2(width) + log2(height) passes, then the sum of the box centered on each texel is obtained by
+ * looking up its four corners in the table. Once the table is built, the box size can change at no additional cost.
+ * 
+ * Sums are accumulated in 32-bit floats, thus precision degrades with the buffer size: blurring a downscaled source is
+ * advisable, as it usually is for large blurs anyway. Floating point framebuffers must be supported, see
+ * {@link com.bitfire.utils.SummedAreaTable} for a reference implementation to verify the results against.
+ * 
+ * @author bmanuel
+ */
+public final class SummedAreaBlur extends MultipassFilter {
+	private final SummedAreaPass prefix, box;
+	private final FrameBuffer[] tables;
+	private final int width, height;
+	private float radiusX, radiusY;
+
+	/** Creates a new summed-area table blur for buffers of the specified size. */
+	public SummedAreaBlur( int width, int height ) {
+		this.width = width;
+		this.height = height;
+
+		prefix = new SummedAreaPass( false );
+		box = new SummedAreaPass( true );
+
+		tables = new FrameBuffer[ 2 ];
+		for( int i = 0; i < tables.length; i++ ) {
+			tables[i] = new FloatFrameBuffer( width, height, false );
+
+			// the table is looked up at exact texel centers
+			Texture t = tables[i].getColorBufferTexture();
+			t.setFilter( TextureFilter.Nearest, TextureFilter.Nearest );
+			t.setWrap( TextureWrap.ClampToEdge, TextureWrap.ClampToEdge );
+		}
+
+		setRadius( 1, 1 );
+	}
+
+	/** Enqueues the programs needed by a filter constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup ) {
+		SummedAreaPass.enqueueShaders( warmup, false );
+		SummedAreaPass.enqueueShaders( warmup, true );
+	}
+
+	public void dispose() {
+		prefix.dispose();
+		box.dispose();
+		for( int i = 0; i < tables.length; i++ ) {
+			tables[i].dispose();
+		}
+	}
+
+	/** Sets the half-size of the box, in pixels, rounded to the nearest whole pixel. */
+	public void setRadius( float radiusX, float radiusY ) {
+		this.radiusX = Math.max( 0, Math.round( radiusX ) );
+		this.radiusY = Math.max( 0, Math.round( radiusY ) );
+	}
+
+	public float getRadiusX() {
+		return radiusX;
+	}
+
+	public float getRadiusY() {
+		return radiusY;
+	}
+
+	@Override
+	public void rebind() {
+		prefix.rebind();
+		box.rebind();
+	}
+
+	@Override
+	public void render( PingPongBuffer buffer ) {
+		// the result will be written to the buffer's next target, as any other pass
+		Texture input = buffer.capture();
+		int current = 0;
+
+		// horizontal prefix sums
+		for( int offset = 1; offset < width; offset *= 2 ) {
+			prefix.setOffset( offset / (float)width, 0 );
+			prefix.setInput( input ).setOutput( tables[current] ).render();
+			input = tables[current].getColorBufferTexture();
+			current = 1 - current;
+		}
+
+		// vertical prefix sums
+		for( int offset = 1; offset < height; offset *= 2 ) {
+			prefix.setOffset( 0, offset / (float)height );
+			prefix.setInput( input ).setOutput( tables[current] ).render();
+			input = tables[current].getColorBufferTexture();
+			current = 1 - current;
+		}
+
+		box.setBox( radiusX / width, radiusY / height, 1f / width, 1f / height );
+		box.setInput( input ).setOutput( buffer.getResultBuffer() ).render();
+	}
+}
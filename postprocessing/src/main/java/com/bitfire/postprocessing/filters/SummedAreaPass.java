@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.filters;
+
+import com.badlogic.gdx.math.Vector2;
+import com.bitfire.postprocessing.utils.TextureBinder;
+import com.bitfire.utils.ShaderVariants;
+import com.bitfire.utils.ShaderWarmup;
+
+/**
+ * A single pass of the summed-area table blur, either building the table or sampling the box, see
+ * {@link SummedAreaBlur}.
+ * 
+ * @author bmanuel
+ */
+public final class SummedAreaPass extends Filter<SummedAreaPass> {
+	private static final ShaderVariants Variants = new ShaderVariants( "screenspace", "summed-area", "SAMPLE_BOX" );
+	private static final int SampleBox = Variants.feature( "SAMPLE_BOX" );
+
+	public enum Param implements Parameter {
+		// @formatter:off
+		Texture( "u_texture0", 0 ),
+		Offset( "Offset", 2 ),
+		Radius( "Radius", 2 ),
+		TexelSize( "TexelSize", 2 );
+		// @formatter:on
+
+		private String mnemonic;
+		private int elementSize;
+
+		private Param( String mnemonic, int elementSize ) {
+			this.mnemonic = mnemonic;
+			this.elementSize = elementSize;
+		}
+
+		@Override
+		public String mnemonic() {
+			return this.mnemonic;
+		}
+
+		@Override
+		public int arrayElementSize() {
+			return this.elementSize;
+		}
+	}
+
+	private final Vector2 offset = new Vector2();
+	private final Vector2 radius = new Vector2();
+	private final Vector2 texelSize = new Vector2();
+	private final boolean box;
+
+	/** Creates a new pass, if box is true it will sample the box from the table instead of building it. */
+	public SummedAreaPass( boolean box ) {
+		super( Variants.get( permutation( box ) ) );
+		this.box = box;
+		rebind();
+	}
+
+	/** Enqueues the program needed by a filter constructed with the same parameters. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean box ) {
+		Variants.enqueue( warmup, permutation( box ) );
+	}
+
+	private static int permutation( boolean box ) {
+		return box ? SampleBox : 0;
+	}
+
+	/** Sets the distance to the texel to be summed, in texture coordinates, for passes building the table. */
+	public void setOffset( float x, float y ) {
+		offset.set( x, y );
+		setParam( Param.Offset, offset );
+	}
+
+	/** Sets the box half-size and the texel size of the table, in texture coordinates, for passes sampling the box. */
+	public void setBox( float radiusX, float radiusY, float texelWidth, float texelHeight ) {
+		radius.set( radiusX, radiusY );
+		texelSize.set( texelWidth, texelHeight );
+		setParams( Param.Radius, radius );
+		setParams( Param.TexelSize, texelSize ).endParams();
+	}
+
+	@Override
+	public void rebind() {
+		setParams( Param.Texture, u_texture0 );
+		if( box ) {
+			setParams( Param.Radius, radius );
+			setParams( Param.TexelSize, texelSize );
+		} else {
+			setParams( Param.Offset, offset );
+		}
+
+		endParams();
+	}
+
+	@Override
+	protected void onBeforeRender() {
+		TextureBinder.bind( inputTexture, u_texture0 );
+	}
+}
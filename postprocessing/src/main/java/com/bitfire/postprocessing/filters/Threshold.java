@@ -16,15 +16,26 @@
 
 package com.bitfire.postprocessing.filters;
 
-import com.bitfire.utils.ShaderLoader;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.Vector3;
+import com.bitfire.postprocessing.utils.TextureBinder;
+import com.bitfire.utils.ShaderVariants;
+import com.bitfire.utils.ShaderWarmup;
 
 public final class Threshold extends Filter<Threshold> {
+	private static final ShaderVariants Variants = new ShaderVariants( "screenspace", "threshold", "ENCODE_RGBM",
+			"DOWNSAMPLE", "SOFT_KNEE" );
+	private static final int EncodeRgbm = Variants.feature( "ENCODE_RGBM" );
+	private static final int Downsample = Variants.feature( "DOWNSAMPLE" );
+	private static final int SoftKnee = Variants.feature( "SOFT_KNEE" );
 
 	public enum Param implements Parameter {
 		// @formatter:off
 		Texture( "u_texture0", 0 ),
 		Threshold( "treshold", 0 ),
-		ThresholdInvTx( "tresholdInvTx", 0 );
+		ThresholdInvTx( "tresholdInvTx", 0 ),
+		TexelOffset( "TexelOffset", 2 ),
+		Curve( "curve", 3 );
 		// @formatter:on
 
 		private String mnemonic;
@@ -47,30 +58,133 @@ public final class Threshold extends Filter<Threshold> {
 	}
 
 	public Threshold() {
-		super( ShaderLoader.fromFile( "screenspace", "threshold" ) );
+		this( false );
+	}
+
+	/**
+	 * Creates a new threshold filter, optionally encoding the output as RGBM so that values exceeding the [0,1] range
+	 * will survive being stored into an 8-bit framebuffer: this only helps with floating point inputs, since an 8-bit
+	 * input never exceeds that range.
+	 */
+	public Threshold( boolean encodeRgbm ) {
+		super( Variants, permutation( encodeRgbm ) );
 		rebind();
+
+		// no downsampling and hard threshold yet
+		updatePermutation();
+	}
+
+	/** Enqueues the programs needed by a filter constructed with the same parameters, specializations included. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean encodeRgbm ) {
+		int generic = permutation( encodeRgbm );
+		Variants.enqueue( warmup, generic );
+		Variants.enqueue( warmup, generic & ~Downsample );
+		Variants.enqueue( warmup, generic & ~SoftKnee );
+		Variants.enqueue( warmup, generic & ~(Downsample | SoftKnee) );
+	}
+
+	private static int permutation( boolean encodeRgbm ) {
+		return (encodeRgbm ? EncodeRgbm : 0) | Downsample | SoftKnee;
+	}
+
+	/** Downsampling and the soft knee are compiled out when not enabled. */
+	@Override
+	protected int getSpecializedPermutation() {
+		int result = permutation( hasFeature( EncodeRgbm ) );
+		if( !downsample ) {
+			result &= ~Downsample;
+		}
+
+		if( softness == 0 ) {
+			result &= ~SoftKnee;
+		}
+
+		return result;
 	}
 
 	private float gamma = 0;
+	private float softness = 0;
+	private boolean downsample = false;
+	private final Vector2 texelOffset = new Vector2();
+	private final Vector3 curve = new Vector3();
 
 	public void setTreshold( float gamma ) {
 		this.gamma = gamma;
+		computeCurve();
 		setParams( Param.Threshold, gamma );
-		setParams( Param.ThresholdInvTx, 1f / (1 - gamma) ).endParams();
+		setParams( Param.ThresholdInvTx, 1f / (1 - gamma) );
+		if( hasFeature( SoftKnee ) ) {
+			setParams( Param.Curve, curve );
+		}
+
+		endParams();
+	}
+
+	/**
+	 * Sets the softness of the threshold in the [0,1] range: values below the threshold, down to threshold * (1 -
+	 * softness), will fade in along a quadratic curve instead of being discarded, avoiding the harsh cutoff that makes
+	 * small bright details flicker. Zero means a hard threshold.
+	 */
+	public void setSoftKnee( float softness ) {
+		this.softness = softness;
+		computeCurve();
+		updatePermutation();
+		if( hasFeature( SoftKnee ) ) {
+			setParam( Param.Curve, curve );
+		}
+	}
+
+	/**
+	 * Enables downsampling: instead of a single lookup, four bilinear lookups are performed so that the whole footprint
+	 * of each texel of the output buffer, of the specified size, is averaged. This avoids the aliasing and flickering
+	 * produced when thresholding straight into a much smaller buffer.
+	 */
+	public void enableDownsampling( int outputWidth, int outputHeight ) {
+		downsample = true;
+
+		// a quarter of an output texel is the center of each 2x2 block of input texels
+		// when downscaling by 4, or of each input texel when downscaling by 2
+		texelOffset.set( 0.25f / (float)outputWidth, 0.25f / (float)outputHeight );
+		updatePermutation();
+		if( hasFeature( Downsample ) ) {
+			setParam( Param.TexelOffset, texelOffset );
+		}
+	}
+
+	public void disableDownsampling() {
+		downsample = false;
+		updatePermutation();
+	}
+
+	private void computeCurve() {
+		float knee = gamma * softness + 0.00001f;
+		curve.set( gamma - knee, knee * 2f, 0.25f / knee );
 	}
 
 	public float getThreshold() {
 		return gamma;
 	}
 
+	public float getSoftKnee() {
+		return softness;
+	}
+
+	public boolean isDownsamplingEnabled() {
+		return downsample;
+	}
+
 	@Override
 	protected void onBeforeRender() {
-		inputTexture.bind( u_texture0 );
+		TextureBinder.bind( inputTexture, u_texture0 );
 	}
 
 	@Override
 	public void rebind() {
 		setParams( Param.Texture, u_texture0 );
+		if( hasFeature( Downsample ) ) {
+			setParams( Param.TexelOffset, texelOffset );
+		}
+
 		setTreshold( this.gamma );
 	}
 }
@@ -16,10 +16,23 @@
 
 package com.bitfire.postprocessing.filters;
 
+import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
-import com.bitfire.utils.ShaderLoader;
+import com.bitfire.postprocessing.utils.GradientMap;
+import com.bitfire.postprocessing.utils.Lut3D;
+import com.bitfire.postprocessing.utils.TextureBinder;
+import com.bitfire.utils.ShaderVariants;
+import com.bitfire.utils.ShaderWarmup;
 
 public final class Vignetting extends Filter<Vignetting> {
+	private static final ShaderVariants Variants = new ShaderVariants( "screenspace", "vignetting", "CONTROL_SATURATION",
+			"ENABLE_GRADIENT_MAPPING", "ENABLE_LUT_3D" );
+	private static final int ControlSaturation = Variants.feature( "CONTROL_SATURATION" );
+	private static final int GradientMapping = Variants.feature( "ENABLE_GRADIENT_MAPPING" );
+	private static final int BakedLut = Variants.feature( "ENABLE_LUT_3D" );
+
+	/** The smallest change of the lut index offset causing the baked lut to be baked again. */
+	public static final float LutIndexOffsetTolerance = 1f / 256f;
 
 	private float x, y;
 	private float intensity, saturation, saturationMul;
@@ -31,6 +44,13 @@ public final class Vignetting extends Filter<Vignetting> {
 	private float lutStep, lutStepOffset, lutIndexOffset;
 	private float centerX, centerY;
 
+	// gradient mapping baked into a 3D lut
+	private final boolean dobake;
+	private GradientMap gradientMap;
+	private Lut3D lut3d;
+	private float bakedIndexOffset;
+	private boolean dirty;
+
 	public enum Param implements Parameter {
 		// @formatter:off
 		Texture0("u_texture0",0),
@@ -46,6 +66,7 @@ public final class Vignetting extends Filter<Vignetting> {
 		LutIndexOffset("LutIndexOffset",0),
 		LutStep("LutStep",0),
 		LutStepOffset("LutStepOffset",0),
+		LutSize("LutSize",0),
 		CenterX("CenterX",0),
 		CenterY("CenterY",0)
 		;
@@ -71,11 +92,22 @@ public final class Vignetting extends Filter<Vignetting> {
 	}
 
 	public Vignetting( boolean controlSaturation ) {
-		super( ShaderLoader.fromFile( "screenspace", "vignetting",
-				(controlSaturation ? "#define CONTROL_SATURATION\n#define ENABLE_GRADIENT_MAPPING"
-						: "#define ENABLE_GRADIENT_MAPPING") ) );
+		this( controlSaturation, false );
+	}
+
+	/**
+	 * Creates a new vignetting filter, if bakeLut is true the gradient mapping is baked on the CPU into a 3D lut, blend
+	 * between the two rows and intensity included, so that it costs two texture fetches per pixel instead of six: the
+	 * lut is baked again whenever the lut indices or intensity change, or the index offset changes by at least
+	 * {@link #LutIndexOffsetTolerance}.
+	 */
+	public Vignetting( boolean controlSaturation, boolean bakeLut ) {
+		super( Variants, permutation( controlSaturation, bakeLut ) );
 		dolut = false;
 		dosat = controlSaturation;
+		dobake = bakeLut;
+		gradientMap = null;
+		lut3d = bakeLut ? new Lut3D() : null;
 
 		texLut = null;
 		lutindex = new int[ 2 ];
@@ -88,6 +120,36 @@ public final class Vignetting extends Filter<Vignetting> {
 		setCoords( 0.8f, 0.25f );
 		setCenter( 0.5f, 0.5f );
 		setIntensity( 1f );
+
+		// no lut yet
+		updatePermutation();
+	}
+
+	/** Enqueues the programs needed by a filter constructed with the same parameters, specializations included. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean controlSaturation ) {
+		enqueueShaders( warmup, controlSaturation, false );
+	}
+
+	/** Enqueues the programs needed by a filter constructed with the same parameters, specializations included. */
+	public static void enqueueShaders( ShaderWarmup warmup, boolean controlSaturation, boolean bakeLut ) {
+		int generic = permutation( controlSaturation, bakeLut );
+		Variants.enqueue( warmup, generic );
+		Variants.enqueue( warmup, generic & ~(GradientMapping | BakedLut) );
+	}
+
+	private static int permutation( boolean controlSaturation, boolean bakeLut ) {
+		return (controlSaturation ? ControlSaturation : 0) | (bakeLut ? BakedLut : GradientMapping);
+	}
+
+	/** Gradient mapping is compiled out whenever there is no lut or no lut index to look up. */
+	@Override
+	protected int getSpecializedPermutation() {
+		int generic = permutation( dosat, dobake );
+		if( !dolut || lutindex[0] <= -1 ) {
+			return generic & ~(GradientMapping | BakedLut);
+		}
+
+		return generic;
 	}
 
 	public void setIntensity( float intensity ) {
@@ -127,27 +189,72 @@ public final class Vignetting extends Filter<Vignetting> {
 		setParam( Param.VignetteY, y );
 	}
 
-	/** Sets the texture with which gradient mapping will be performed. */
+	/**
+	 * Sets the texture with which gradient mapping will be performed: if the lut is to be baked, its pixels are read back
+	 * via {@link GradientMap#fromTexture(Texture)}, which {@link #setLut(Pixmap)} avoids.
+	 */
 	public void setLut( Texture texture ) {
 		texLut = texture;
 		dolut = (texLut != null);
+		if( dobake ) {
+			setGradientMap( dolut ? GradientMap.fromTexture( texture ) : null );
+			return;
+		}
 
+		// the step is needed as soon as a lut index gets set, even if the permutation doesn't look up the lut yet
 		if( dolut ) {
 			lutStep = 1f / (float)texture.getHeight();
 			lutStepOffset = lutStep / 2f; // center texel
+		}
+
+		updatePermutation();
+
+		if( dolut && hasFeature( GradientMapping ) ) {
 			setParams( Param.TexLUT, u_texture1 );
 			setParams( Param.LutStep, lutStep );
 			setParams( Param.LutStepOffset, lutStepOffset ).endParams();
 		}
 	}
 
+	/**
+	 * Sets the pixels with which gradient mapping will be performed, if the lut is to be baked: the pixmap is only read
+	 * here, so it can be disposed afterwards.
+	 */
+	public void setLut( Pixmap pixmap ) {
+		if( dobake ) {
+			texLut = null;
+			dolut = (pixmap != null);
+			setGradientMap( dolut ? new GradientMap( pixmap ) : null );
+		}
+	}
+
+	private void setGradientMap( GradientMap map ) {
+		gradientMap = map;
+		dirty = true;
+		updatePermutation();
+	}
+
+	/** Returns the lut the gradient mapping is baked into, or null if the lut is not to be baked. */
+	public Lut3D getBakedLut() {
+		return lut3d;
+	}
+
 	public void setLutIntensity( float value ) {
 		lutintensity = value;
-		setParam( Param.LutIntensity, lutintensity );
+		dirty = true;
+		if( hasFeature( GradientMapping ) ) {
+			setParam( Param.LutIntensity, lutintensity );
+		}
 	}
 
 	public void setLutIndexVal( int index, int value ) {
 		lutindex[index] = value;
+		dirty = true;
+		updatePermutation();
+
+		if( !hasFeature( GradientMapping ) ) {
+			return;
+		}
 
 		switch( index ) {
 		case 0:
@@ -162,7 +269,13 @@ public final class Vignetting extends Filter<Vignetting> {
 
 	public void setLutIndexOffset( float value ) {
 		lutIndexOffset = value;
-		setParam( Param.LutIndexOffset, lutIndexOffset );
+		if( Math.abs( value - bakedIndexOffset ) >= LutIndexOffsetTolerance ) {
+			dirty = true;
+		}
+
+		if( hasFeature( GradientMapping ) ) {
+			setParam( Param.LutIndexOffset, lutIndexOffset );
+		}
 	}
 
 	/** Specify the center, in normalized screen coordinates. */
@@ -217,18 +330,37 @@ public final class Vignetting extends Filter<Vignetting> {
 		return dolut;
 	}
 
+	public boolean isLutBaked() {
+		return dobake;
+	}
+
+	@Override
+	public void dispose() {
+		super.dispose();
+		if( lut3d != null ) {
+			lut3d.dispose();
+		}
+	}
+
 	@Override
 	public void rebind() {
 		setParams( Param.Texture0, u_texture0 );
 
-		setParams( Param.LutIndex, lutindex[0] );
-		setParams( Param.LutIndex2, lutindex[1] );
-		setParams( Param.LutIndexOffset, lutIndexOffset );
+		if( hasFeature( GradientMapping ) ) {
+			setParams( Param.LutIndex, lutindex[0] );
+			setParams( Param.LutIndex2, lutindex[1] );
+			setParams( Param.LutIndexOffset, lutIndexOffset );
+
+			setParams( Param.TexLUT, u_texture1 );
+			setParams( Param.LutIntensity, lutintensity );
+			setParams( Param.LutStep, lutStep );
+			setParams( Param.LutStepOffset, lutStepOffset );
+		}
 
-		setParams( Param.TexLUT, u_texture1 );
-		setParams( Param.LutIntensity, lutintensity );
-		setParams( Param.LutStep, lutStep );
-		setParams( Param.LutStepOffset, lutStepOffset );
+		if( hasFeature( BakedLut ) ) {
+			setParams( Param.TexLUT, u_texture1 );
+			setParams( Param.LutSize, (float)lut3d.getSize() );
+		}
 
 		if( dosat ) {
 			setParams( Param.Saturation, saturation );
@@ -245,9 +377,25 @@ public final class Vignetting extends Filter<Vignetting> {
 
 	@Override
 	protected void onBeforeRender() {
-		inputTexture.bind( u_texture0 );
-		if( dolut ) {
-			texLut.bind( u_texture1 );
+		// baking uploads the lut, so it must happen before any other texture gets bound
+		if( hasFeature( BakedLut ) && dirty ) {
+			// without a gradient map the lut is baked back to the identity
+			if( gradientMap != null ) {
+				gradientMap.set( lutindex[0], lutindex[1], lutIndexOffset, lutintensity );
+			}
+
+			lut3d.bake( gradientMap );
+			bakedIndexOffset = lutIndexOffset;
+			dirty = false;
+		}
+
+		TextureBinder.bind( inputTexture, u_texture0 );
+		if( dolut && hasFeature( GradientMapping ) ) {
+			TextureBinder.bind( texLut, u_texture1 );
+		}
+
+		if( hasFeature( BakedLut ) ) {
+			TextureBinder.bind( lut3d.getTexture(), u_texture1 );
 		}
 	}
 }
@@ -16,7 +16,9 @@
 
 package com.bitfire.postprocessing.filters;
 
+import com.bitfire.postprocessing.utils.TextureBinder;
 import com.bitfire.utils.ShaderLoader;
+import com.bitfire.utils.ShaderWarmup;
 
 public final class Zoom extends Filter<Zoom> {
 	private float x, y, zoom;
@@ -56,6 +58,11 @@ public final class Zoom extends Filter<Zoom> {
 		setZoom( 1f );
 	}
 
+	/** Enqueues the program needed by this filter. */
+	public static void enqueueShaders( ShaderWarmup warmup ) {
+		warmup.add( "zoom", "zoom" );
+	}
+
 	/** Specify the zoom origin, in normalized screen coordinates. */
 	public void setOrigin( float x, float y ) {
 		this.x = x;
@@ -94,6 +101,6 @@ public final class Zoom extends Filter<Zoom> {
 
 	@Override
 	protected void onBeforeRender() {
-		inputTexture.bind( u_texture0 );
+		TextureBinder.bind( inputTexture, u_texture0 );
 	}
 }
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.utils;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * A pointwise color operation to be composed by the {@link com.bitfire.postprocessing.effects.ColorGrading} effect:
+ * every change to its parameters bumps its revision, so that the composition is baked again only when needed.
+ * 
+ * The common operations are provided as nested classes, they reproduce the per-pixel math of the filters performing
+ * them, so that any of them can be folded into the lut.
+ * 
+ * @author bmanuel
+ */
+public abstract class ColorOperation implements Lut3D.Transform {
+	private int revision = 0;
+
+	/** Returns a number changing whenever the operation parameters change. */
+	public final int getRevision() {
+		return revision;
+	}
+
+	/** Concrete operations shall invoke this whenever their parameters change. */
+	protected final void changed() {
+		revision++;
+	}
+
+	/** Mixes the colors with their luminance, as saturation.glsl does: 0 desaturates them, 1 leaves them unchanged. */
+	public static final class Saturation extends ColorOperation {
+		private float saturation;
+
+		public Saturation( float saturation ) {
+			this.saturation = saturation;
+		}
+
+		public void set( float saturation ) {
+			if( this.saturation != saturation ) {
+				this.saturation = saturation;
+				changed();
+			}
+		}
+
+		public float get() {
+			return saturation;
+		}
+
+		@Override
+		public void apply( float[] rgb ) {
+			float grey = rgb[0] * 0.3f + rgb[1] * 0.59f + rgb[2] * 0.11f;
+			for( int i = 0; i < 3; i++ ) {
+				rgb[i] = grey + (rgb[i] - grey) * saturation;
+			}
+		}
+	}
+
+	/** Scales the colors around the middle gray: 0 flattens them, 1 leaves them unchanged. */
+	public static final class Contrast extends ColorOperation {
+		private float contrast;
+
+		public Contrast( float contrast ) {
+			this.contrast = contrast;
+		}
+
+		public void set( float contrast ) {
+			if( this.contrast != contrast ) {
+				this.contrast = contrast;
+				changed();
+			}
+		}
+
+		public float get() {
+			return contrast;
+		}
+
+		@Override
+		public void apply( float[] rgb ) {
+			for( int i = 0; i < 3; i++ ) {
+				rgb[i] = 0.5f + (rgb[i] - 0.5f) * contrast;
+			}
+		}
+	}
+
+	/**
+	 * Multiplies the colors by a tint, as the intensity of the Combine filter does with a gray tint and the CrtScreen
+	 * filter does with its own tint.
+	 */
+	public static final class Tint extends ColorOperation {
+		private final Color tint = new Color( 1f, 1f, 1f, 1f );
+
+		public Tint( float r, float g, float b ) {
+			tint.set( r, g, b, 1f );
+		}
+
+		public Tint( float intensity ) {
+			this( intensity, intensity, intensity );
+		}
+
+		public void set( float r, float g, float b ) {
+			if( tint.r != r || tint.g != g || tint.b != b ) {
+				tint.set( r, g, b, 1f );
+				changed();
+			}
+		}
+
+		public void set( Color color ) {
+			set( color.r, color.g, color.b );
+		}
+
+		public Color get() {
+			return tint;
+		}
+
+		@Override
+		public void apply( float[] rgb ) {
+			rgb[0] *= tint.r;
+			rgb[1] *= tint.g;
+			rgb[2] *= tint.b;
+		}
+	}
+
+	/**
+	 * Maps each color channel through a curve, given as values evenly spaced over the [0,1] input range and linearly
+	 * interpolated: a null curve leaves its channel unchanged.
+	 */
+	public static final class Curves extends ColorOperation {
+		private final float[][] curves = new float[ 3 ][];
+
+		/** Sets the same curve for all the channels. */
+		public void set( float[] curve ) {
+			set( curve, curve, curve );
+		}
+
+		/**
+		 * Sets the curves for each channel, the arrays are copied.
+		 * 
+		 * @throws GdxRuntimeException if any curve has less than two values.
+		 */
+		public void set( float[] red, float[] green, float[] blue ) {
+			curves[0] = copy( red );
+			curves[1] = copy( green );
+			curves[2] = copy( blue );
+			changed();
+		}
+
+		private static float[] copy( float[] curve ) {
+			if( curve == null ) {
+				return null;
+			}
+
+			if( curve.length < 2 ) {
+				throw new GdxRuntimeException( "A curve needs at least two values" );
+			}
+
+			float[] result = new float[ curve.length ];
+			System.arraycopy( curve, 0, result, 0, curve.length );
+			return result;
+		}
+
+		@Override
+		public void apply( float[] rgb ) {
+			for( int i = 0; i < 3; i++ ) {
+				float[] curve = curves[i];
+				if( curve == null ) {
+					continue;
+				}
+
+				float x = Math.min( Math.max( rgb[i], 0f ), 1f ) * (curve.length - 1);
+				int x0 = Math.min( (int)x, curve.length - 2 );
+				rgb[i] = curve[x0] + (curve[x0 + 1] - curve[x0]) * (x - x0);
+			}
+		}
+	}
+}
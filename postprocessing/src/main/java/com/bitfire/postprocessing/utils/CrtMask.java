@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.utils;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.Texture.TextureWrap;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Precomputes the static part of the CRT screen look into textures, so that it can be looked up instead of being
+ * evaluated per-pixel: a vignette texture stretched over the screen and a pattern texture, tiled over the screen,
+ * holding one period of the scanlines and one triad of the aperture grille.
+ * 
+ * The textures are not managed, {@link #rebind()} shall be invoked when the OpenGL context is lost.
+ * 
+ * @author bmanuel
+ */
+public final class CrtMask implements Disposable {
+	/** The scanlines angular frequency over the screen height, as in the original formula. */
+	public static final float ScanlineFrequency = 1000f;
+
+	/** The width, in pixels, of a triad of the aperture grille. */
+	public static final int GrilleWidth = 3;
+
+	private static final int VignetteSize = 64;
+	private static final int ScanlineSamples = 16;
+
+	private final int width, height;
+	private float grilleStrength;
+	private Texture vignette, pattern;
+
+	/** Creates the mask for a screen of the specified size, without aperture grille. */
+	public CrtMask( int width, int height ) {
+		this( width, height, 0f );
+	}
+
+	/**
+	 * Creates the mask for a screen of the specified size, the aperture grille darkening the color channels not belonging
+	 * to each stripe by the specified strength, in the [0,1] range.
+	 */
+	public CrtMask( int width, int height, float grilleStrength ) {
+		this.width = width;
+		this.height = height;
+		this.grilleStrength = grilleStrength;
+		vignette = buildVignette();
+		pattern = buildPattern();
+	}
+
+	/** Sets the aperture grille strength in the [0,1] range, rebuilding the pattern texture if it changed. */
+	public void setGrilleStrength( float strength ) {
+		if( grilleStrength != strength ) {
+			grilleStrength = strength;
+			pattern.dispose();
+			pattern = buildPattern();
+		}
+	}
+
+	public float getGrilleStrength() {
+		return grilleStrength;
+	}
+
+	public Texture getVignetteTexture() {
+		return vignette;
+	}
+
+	public Texture getPatternTexture() {
+		return pattern;
+	}
+
+	/** Returns how many times the pattern is repeated horizontally over the screen. */
+	public float getPatternScaleX() {
+		return (float)width / (float)GrilleWidth;
+	}
+
+	/** Returns how many times the pattern is repeated vertically over the screen. */
+	public float getPatternScaleY() {
+		return ScanlineFrequency / MathUtils.PI2;
+	}
+
+	/** Returns the vertical pattern offset to scroll the scanlines as the original formula does at the specified time. */
+	public static float getPatternScroll( float elapsedSecs ) {
+		float scroll = -10f * elapsedSecs / MathUtils.PI2;
+		return scroll - (float)Math.floor( scroll );
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/** Builds the textures again, their contents being lost along with the OpenGL context. */
+	public void rebind() {
+		dispose();
+		vignette = buildVignette();
+		pattern = buildPattern();
+	}
+
+	@Override
+	public void dispose() {
+		vignette.dispose();
+		pattern.dispose();
+	}
+
+	// 0.5 + 0.5 * 16 * x * y * (1 - x) * (1 - y)
+	private static Texture buildVignette() {
+		Pixmap p = new Pixmap( VignetteSize, VignetteSize, Format.RGBA8888 );
+		for( int y = 0; y < VignetteSize; y++ ) {
+			float v = (y + 0.5f) / VignetteSize;
+			for( int x = 0; x < VignetteSize; x++ ) {
+				float u = (x + 0.5f) / VignetteSize;
+				float value = 0.5f + 8f * u * v * (1f - u) * (1f - v);
+				p.drawPixel( x, y, Color.rgba8888( value, value, value, 1f ) );
+			}
+		}
+
+		return upload( p );
+	}
+
+	// 0.9 + 0.1 * sin(10 * time - y * 1000), the time being accounted for by scrolling
+	private Texture buildPattern() {
+		Pixmap p = new Pixmap( GrilleWidth, ScanlineSamples, Format.RGBA8888 );
+		float dark = 1f - grilleStrength;
+
+		for( int y = 0; y < ScanlineSamples; y++ ) {
+			float phase = (y + 0.5f) / ScanlineSamples;
+			float scanline = 0.9f - 0.1f * (float)Math.sin( MathUtils.PI2 * phase );
+
+			for( int x = 0; x < GrilleWidth; x++ ) {
+				float r = (x == 0 ? 1f : dark) * scanline;
+				float g = (x == 1 ? 1f : dark) * scanline;
+				float b = (x == 2 ? 1f : dark) * scanline;
+				p.drawPixel( x, y, Color.rgba8888( r, g, b, 1f ) );
+			}
+		}
+
+		return upload( p );
+	}
+
+	private static Texture upload( Pixmap pixmap ) {
+		Texture t = new Texture( pixmap );
+		pixmap.dispose();
+
+		// the pattern is not a power of two, thus it's tiled by the fragment program rather than by repeating it
+		t.setFilter( TextureFilter.Linear, TextureFilter.Linear );
+		t.setWrap( TextureWrap.ClampToEdge, TextureWrap.ClampToEdge );
+		return t;
+	}
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.utils;
+
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Keeps a set of framebuffers to be used as transient render targets, ie. obtained and freed within the same rendering
+ * operation, so that effects needing intermediate buffers of the same size and format can share them instead of
+ * allocating their own.
+ * 
+ * @author bmanuel
+ */
+public final class FrameBufferPool implements Disposable {
+	private static final class Entry {
+		final FrameBuffer buffer;
+		final Format format;
+		boolean inUse;
+
+		Entry( FrameBuffer buffer, Format format ) {
+			this.buffer = buffer;
+			this.format = format;
+			this.inUse = false;
+		}
+	}
+
+	private final Array<Entry> entries = new Array<Entry>( false, 8 );
+
+	/**
+	 * Returns a framebuffer with the specified format and size, creating a new one only if no free one is available: the
+	 * {@link TextureBinder} cache is invalidated whenever a new one gets created.
+	 */
+	public FrameBuffer obtain( Format format, int width, int height ) {
+		for( int i = 0; i < entries.size; i++ ) {
+			Entry e = entries.get( i );
+			if( !e.inUse && e.format == format && e.buffer.getWidth() == width && e.buffer.getHeight() == height ) {
+				e.inUse = true;
+				return e.buffer;
+			}
+		}
+
+		Entry e = new Entry( new FrameBuffer( format, width, height, false ), format );
+		e.inUse = true;
+
+		// buffers are created mid-chain, binding their textures behind the binder's back
+		TextureBinder.invalidate();
+		entries.add( e );
+		return e.buffer;
+	}
+
+	/** Gives back the framebuffer to the pool, its contents shall not be relied upon anymore. */
+	public void free( FrameBuffer buffer ) {
+		for( int i = 0; i < entries.size; i++ ) {
+			Entry e = entries.get( i );
+			if( e.buffer == buffer ) {
+				e.inUse = false;
+				return;
+			}
+		}
+	}
+
+	/** Returns the number of framebuffers created by the pool, either in use or free. */
+	public int size() {
+		return entries.size;
+	}
+
+	/** Disposes all the framebuffers created by the pool, the pool can still be used afterwards. */
+	@Override
+	public void dispose() {
+		for( int i = 0; i < entries.size; i++ ) {
+			entries.get( i ).buffer.dispose();
+		}
+
+		entries.clear();
+	}
+}
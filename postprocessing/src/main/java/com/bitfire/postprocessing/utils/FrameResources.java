@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.utils;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/**
+ * A registry of named textures produced while rendering a frame: effects can publish their intermediate results, so
+ * that the effects following them in the chain can consume them instead of computing them again. The registry is
+ * cleared as soon as a new frame starts being post-processed, thus published textures are only valid from the moment
+ * they are published to the start of the next frame.
+ * 
+ * Consumers shall treat the textures as read-only, since their owners are going to render to them again.
+ * 
+ * @author bmanuel
+ */
+public final class FrameResources {
+	private final ObjectMap<String, Texture> textures = new ObjectMap<String, Texture>();
+
+	/** Publishes the texture with the specified name, replacing any other one published with the same name. */
+	public void publish( String name, Texture texture ) {
+		textures.put( name, texture );
+	}
+
+	/** Returns the texture published with the specified name during this frame, or null if there is none. */
+	public Texture get( String name ) {
+		return textures.get( name );
+	}
+
+	public boolean contains( String name ) {
+		return textures.containsKey( name );
+	}
+
+	/** Forgets all the published textures, this is invoked by the PostProcessor at the start of every frame. */
+	public void clear() {
+		textures.clear();
+	}
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.utils;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.TextureData;
+import com.badlogic.gdx.graphics.TextureData.TextureDataType;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * The CPU counterpart of the gradient mapping performed by the vignetting fragment program: each row of the gradient
+ * lut holds three curves, one per color channel, and the result of two rows is blended, then mixed with the original
+ * color by the lut intensity. Meant to be baked into a {@link Lut3D}, either by the Vignetting filter or as a
+ * {@link ColorOperation} composed with others.
+ * 
+ * @author bmanuel
+ */
+public final class GradientMap extends ColorOperation {
+	private final int width, height;
+	private final float[] curves;
+	private int indexA, indexB;
+	private float offset, intensity;
+
+	/** Creates a new gradient map from a copy of the gradient lut pixels. */
+	public GradientMap( Pixmap lut ) {
+		width = lut.getWidth();
+		height = lut.getHeight();
+		curves = new float[ width * height * 3 ];
+
+		Color c = new Color();
+		for( int y = 0, i = 0; y < height; y++ ) {
+			for( int x = 0; x < width; x++ ) {
+				Color.rgba8888ToColor( c, lut.getPixel( x, y ) );
+				curves[i++] = c.r;
+				curves[i++] = c.g;
+				curves[i++] = c.b;
+			}
+		}
+
+		indexA = -1;
+		indexB = -1;
+		offset = 0f;
+		intensity = 1f;
+	}
+
+	/**
+	 * Creates a new gradient map from the pixels of the specified texture, which shall have been loaded from a file or a
+	 * pixmap still available: the texture data is asked to prepare its pixmap again.
+	 * 
+	 * @throws GdxRuntimeException if the texture pixels can't be obtained.
+	 */
+	public static GradientMap fromTexture( Texture lut ) {
+		TextureData data = lut.getTextureData();
+		if( data.getType() != TextureDataType.Pixmap ) {
+			throw new GdxRuntimeException( "The gradient lut pixels can't be obtained from compressed textures" );
+		}
+
+		if( !data.isPrepared() ) {
+			data.prepare();
+		}
+
+		Pixmap pixmap = data.consumePixmap();
+		GradientMap result = new GradientMap( pixmap );
+		if( data.disposePixmap() ) {
+			pixmap.dispose();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Sets the rows to blend by the specified offset and the intensity to mix the result by, a negative first index
+	 * leaving the colors unchanged.
+	 */
+	public void set( int indexA, int indexB, float offset, float intensity ) {
+		if( this.indexA != indexA || this.indexB != indexB || this.offset != offset || this.intensity != intensity ) {
+			this.indexA = indexA;
+			this.indexB = indexB;
+			this.offset = offset;
+			this.intensity = intensity;
+			changed();
+		}
+	}
+
+	public int getRowCount() {
+		return height;
+	}
+
+	@Override
+	public void apply( float[] rgb ) {
+		if( indexA <= -1 ) {
+			return;
+		}
+
+		// rows are clamped as the ClampToEdge wrapping would do
+		int rowA = Math.min( Math.max( indexA, 0 ), height - 1 ) * width;
+		int rowB = Math.min( Math.max( indexB, 0 ), height - 1 ) * width;
+
+		for( int channel = 0; channel < 3; channel++ ) {
+			float value = rgb[channel];
+			float a = sample( rowA, channel, value );
+			float b = sample( rowB, channel, value );
+			float mapped = a + (b - a) * offset;
+			rgb[channel] = value + (mapped - value) * intensity;
+		}
+	}
+
+	// linearly interpolates the curve between texel centers, as the linear filtering would do
+	private float sample( int row, int channel, float value ) {
+		float x = Math.min( Math.max( value * width - 0.5f, 0f ), width - 1 );
+		int x0 = (int)x;
+		int x1 = Math.min( x0 + 1, width - 1 );
+		float f = x - x0;
+
+		float c0 = curves[(row + x0) * 3 + channel];
+		float c1 = curves[(row + x1) * 3 + channel];
+		return c0 + (c1 - c0) * f;
+	}
+}
@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.Texture.TextureWrap;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * A 3D color lookup table, baked on the CPU from any pointwise color transform and stored as a strip of 2D slices, so
+ * that the transform can be applied by the fragment programs with two fetches, see lut3d.glsl.
+ * 
+ * The strip is size*size texels wide and size texels high: slices are laid out horizontally along the blue axis, each
+ * one holding red along the horizontal axis and green along the vertical one.
+ * 
+ * The texture is not managed, {@link #rebind()} shall be invoked when the OpenGL context is lost: the baked contents
+ * are kept on the CPU, so they don't need to be baked again.
+ * 
+ * @author bmanuel
+ */
+public final class Lut3D implements Disposable {
+	/**
+	 * A pointwise color transform, to be baked into a lut: transforms shall not modify their own state while applied,
+	 * since baking may apply them from several threads at once.
+	 */
+	public interface Transform {
+		/** Transforms the specified color in place, its components being in the [0,1] range. */
+		void apply( float[] rgb );
+	}
+
+	/** The default lut size, a good tradeoff between precision and baking time. */
+	public static final int DefaultSize = 32;
+
+	/** The maximum lut size, the strip width not exceeding the texture size guaranteed by OpenGL ES 2.0. */
+	public static final int MaxSize = 64;
+
+	private final int size;
+	private final byte[] data;
+	private Texture texture;
+
+	// the threads baking in parallel with the calling one
+	private ExecutorService workers = null;
+	private int workerCount = 0;
+
+	/** Creates a new lut of the default size, holding the identity transform. */
+	public Lut3D() {
+		this( DefaultSize );
+	}
+
+	/** Creates a new lut of the specified size, holding the identity transform. */
+	public Lut3D( int size ) {
+		if( size < 2 || size > MaxSize ) {
+			throw new GdxRuntimeException( "Invalid lut size (" + size + "), it shall be in the [2," + MaxSize + "] range" );
+		}
+
+		this.size = size;
+		data = new byte[ size * size * size * 4 ];
+		bake( null );
+	}
+
+	/** Bakes the specified transform, or the identity one if null, and uploads it. */
+	public void bake( Transform transform ) {
+		bake( transform, 0, size );
+		upload();
+	}
+
+	/**
+	 * Bakes the specified transform, or the identity one if null, splitting the slices among the specified number of
+	 * threads, the calling one included, and uploads it. Worker threads are created the first time they are needed and
+	 * kept until the lut is disposed, or until a different number of threads is asked for.
+	 * 
+	 * @throws GdxRuntimeException if the transform failed or the calling thread got interrupted while waiting.
+	 */
+	public void bake( final Transform transform, int threads ) {
+		threads = Math.min( Math.max( threads, 1 ), size );
+		if( threads == 1 ) {
+			bake( transform );
+			return;
+		}
+
+		if( workers == null || workerCount != threads - 1 ) {
+			shutdownWorkers();
+			workerCount = threads - 1;
+			workers = Executors.newFixedThreadPool( workerCount, new ThreadFactory() {
+				private int count = 0;
+
+				@Override
+				public Thread newThread( Runnable r ) {
+					Thread t = new Thread( r, "Lut3D baker #" + (++count) );
+					t.setDaemon( true );
+					return t;
+				}
+			} );
+		}
+
+		Future<?>[] pending = new Future<?>[ workerCount ];
+		for( int i = 1; i < threads; i++ ) {
+			final int first = size * i / threads;
+			final int end = size * (i + 1) / threads;
+
+			pending[i - 1] = workers.submit( new Runnable() {
+				@Override
+				public void run() {
+					bake( transform, first, end );
+				}
+			} );
+		}
+
+		RuntimeException failure = null;
+		try {
+			bake( transform, 0, size / threads );
+		} catch( RuntimeException e ) {
+			failure = e;
+		}
+
+		try {
+			for( int i = 0; i < pending.length; i++ ) {
+				pending[i].get();
+			}
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new GdxRuntimeException( "Interrupted while baking the lut", e );
+		} catch( ExecutionException e ) {
+			throw new GdxRuntimeException( "Couldn't bake the lut", e.getCause() );
+		}
+
+		if( failure != null ) {
+			throw new GdxRuntimeException( "Couldn't bake the lut", failure );
+		}
+
+		upload();
+	}
+
+	private void shutdownWorkers() {
+		if( workers != null ) {
+			workers.shutdown();
+			workers = null;
+			workerCount = 0;
+		}
+	}
+
+	/** Bakes the specified transform, or the identity one if null, into the specified range of slices. */
+	private void bake( Transform transform, int firstSlice, int endSlice ) {
+		float[] rgb = new float[ 3 ];
+		float scale = 1f / (size - 1);
+		int stride = size * size * 4;
+
+		for( int b = firstSlice; b < endSlice; b++ ) {
+			for( int g = 0; g < size; g++ ) {
+				int offset = g * stride + b * size * 4;
+				for( int r = 0; r < size; r++ ) {
+					rgb[0] = r * scale;
+					rgb[1] = g * scale;
+					rgb[2] = b * scale;
+					if( transform != null ) {
+						transform.apply( rgb );
+					}
+
+					data[offset++] = quantize( rgb[0] );
+					data[offset++] = quantize( rgb[1] );
+					data[offset++] = quantize( rgb[2] );
+					data[offset++] = (byte)255;
+				}
+			}
+		}
+	}
+
+	private static byte quantize( float value ) {
+		return (byte)Math.round( Math.min( Math.max( value, 0f ), 1f ) * 255f );
+	}
+
+	public Texture getTexture() {
+		return texture;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/** Creates the texture again from the baked contents, the texture being lost along with the OpenGL context. */
+	public void rebind() {
+		disposeTexture();
+		upload();
+	}
+
+	/** Disposes the texture and stops the worker threads, if any. */
+	@Override
+	public void dispose() {
+		disposeTexture();
+		shutdownWorkers();
+	}
+
+	private void disposeTexture() {
+		if( texture != null ) {
+			texture.dispose();
+			texture = null;
+		}
+	}
+
+	private void upload() {
+		Pixmap p = new Pixmap( size * size, size, Format.RGBA8888 );
+		ByteBuffer pixels = p.getPixels();
+		pixels.clear();
+		pixels.put( data );
+		pixels.position( 0 );
+
+		if( texture == null ) {
+			texture = new Texture( p );
+
+			// the red and green axes are interpolated by the hardware, the blue one by the fragment program
+			texture.setFilter( TextureFilter.Linear, TextureFilter.Linear );
+			texture.setWrap( TextureWrap.ClampToEdge, TextureWrap.ClampToEdge );
+		} else {
+			texture.draw( p, 0, 0 );
+		}
+
+		p.dispose();
+
+		// the texture has been bound behind the binder's back
+		TextureBinder.invalidate();
+	}
+}
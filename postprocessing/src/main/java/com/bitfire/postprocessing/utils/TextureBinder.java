@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.postprocessing.utils;
+
+import java.nio.IntBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.Texture.TextureWrap;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * Caches the texture unit bindings and the active texture unit, so that redundant glActiveTexture/glBindTexture calls
+ * can be skipped, and updates texture wrap and filter modes only when they actually change.
+ *
+ * The cached state is only valid as long as every texture bind goes through this class: the PostProcessor invalidates
+ * it before and after running the effects chain, but anything binding textures behind its back while the chain runs
+ * shall call {@link #invalidate()} right afterwards. This includes creating textures or framebuffers and uploading
+ * pixels to textures, since libgdx binds them directly: {@link FrameBufferPool} and {@link Lut3D} do so, and so shall
+ * any filter or effect allocating or uploading textures mid-chain, as well as users running filters on their own.
+ *
+ * Setting {@link #Validate} makes every skipped bind check the actual OpenGL state, throwing as soon as the cache is
+ * found to be stale: this stalls the pipeline and is meant for debugging only.
+ *
+ * @author bmanuel
+ */
+public final class TextureBinder {
+	/** The number of texture units being tracked, binding to any other unit will not be cached. */
+	public static final int MaxUnits = 8;
+
+	/** Whether skipped binds shall be checked against the actual OpenGL state, for debugging purposes. */
+	public static boolean Validate = false;
+
+	private static final int Unknown = -1;
+	private static final int[] boundHandles = new int[ MaxUnits ];
+	private static int activeUnit = Unknown;
+	private static final IntBuffer query = BufferUtils.newIntBuffer( 16 );
+
+	static {
+		invalidate();
+	}
+
+	private TextureBinder() {
+	}
+
+	/** Forgets any cached state, the next bind operations will be issued to OpenGL unconditionally. */
+	public static void invalidate() {
+		activeUnit = Unknown;
+		for( int i = 0; i < MaxUnits; i++ ) {
+			boundHandles[i] = Unknown;
+		}
+	}
+
+	/** Binds the texture to the specified unit, if it isn't already bound to it. */
+	public static void bind( Texture texture, int unit ) {
+		if( unit < 0 || unit >= MaxUnits ) {
+			activeUnit = Unknown;
+			texture.bind( unit );
+			return;
+		}
+
+		int handle = texture.getTextureObjectHandle();
+		if( boundHandles[unit] != handle ) {
+			activate( unit );
+			Gdx.gl.glBindTexture( texture.glTarget, handle );
+			boundHandles[unit] = handle;
+		} else if( Validate ) {
+			validate( unit, handle );
+		}
+	}
+
+	// checks the cache holds the actual bindings, only 2D textures being tracked
+	private static void validate( int unit, int handle ) {
+		if( activeUnit != Unknown ) {
+			Gdx.gl.glGetIntegerv( GL20.GL_ACTIVE_TEXTURE, query );
+			if( query.get( 0 ) != GL20.GL_TEXTURE0 + activeUnit ) {
+				throw new GdxRuntimeException( "Stale texture binder cache: unit " + activeUnit
+						+ " assumed active, but it's unit " + (query.get( 0 ) - GL20.GL_TEXTURE0) );
+			}
+		}
+
+		activate( unit );
+		Gdx.gl.glGetIntegerv( GL20.GL_TEXTURE_BINDING_2D, query );
+		if( query.get( 0 ) != handle ) {
+			throw new GdxRuntimeException( "Stale texture binder cache: texture " + handle + " assumed bound to unit " + unit
+					+ ", but it's texture " + query.get( 0 ) );
+		}
+	}
+
+	/**
+	 * Sets the wrap mode for the specified texture, if it's different from the current one. If force is true the wrap
+	 * mode will be set anyway, eg. when the OpenGL context has been lost.
+	 */
+	public static void setWrap( Texture texture, TextureWrap u, TextureWrap v, boolean force ) {
+		if( force || texture.getUWrap() != u || texture.getVWrap() != v ) {
+			bindToActiveUnit( texture );
+			texture.unsafeSetWrap( u, v, force );
+		}
+	}
+
+	/** Sets the wrap mode for the specified texture, if it's different from the current one. */
+	public static void setWrap( Texture texture, TextureWrap u, TextureWrap v ) {
+		setWrap( texture, u, v, false );
+	}
+
+	/**
+	 * Sets the filter mode for the specified texture, if it's different from the current one. If force is true the
+	 * filter mode will be set anyway, eg. when the OpenGL context has been lost.
+	 */
+	public static void setFilter( Texture texture, TextureFilter min, TextureFilter mag, boolean force ) {
+		if( force || texture.getMinFilter() != min || texture.getMagFilter() != mag ) {
+			bindToActiveUnit( texture );
+			texture.unsafeSetFilter( min, mag, force );
+		}
+	}
+
+	/** Sets the filter mode for the specified texture, if it's different from the current one. */
+	public static void setFilter( Texture texture, TextureFilter min, TextureFilter mag ) {
+		setFilter( texture, min, mag, false );
+	}
+
+	// texture parameters are set on the texture bound to the active unit, so make
+	// sure it's there, picking a known unit if there is no active one yet
+	private static void bindToActiveUnit( Texture texture ) {
+		bind( texture, activeUnit == Unknown ? 0 : activeUnit );
+	}
+
+	private static void activate( int unit ) {
+		if( activeUnit != unit ) {
+			Gdx.gl.glActiveTexture( GL20.GL_TEXTURE0 + unit );
+			activeUnit = unit;
+		}
+	}
+}
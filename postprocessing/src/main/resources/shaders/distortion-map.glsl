@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+// distorted texture coordinates are stored in 8-bit buffers as two bytes
+// each, halved so that values above one half can flag the pixels falling
+// outside the source: precision is about 1/32768 either way, that is plenty
+// for any screen size
+#if defined(GL_ES) && defined(GL_FRAGMENT_PRECISION_HIGH)
+	#define COORDS_PRECISION highp
+#else
+	#define COORDS_PRECISION PRECISION
+#endif
+
+const vec4 OutsideCoords = vec4(1.0, 0.0, 1.0, 0.0);
+
+vec4 encodeCoords(COORDS_PRECISION vec2 uv)
+{
+	COORDS_PRECISION vec2 w = uv * 127.5;
+	return vec4(floor(w.x) / 255.0, fract(w.x), floor(w.y) / 255.0, fract(w.y));
+}
+
+// returns the texture coordinates in xy, z being one when outside the source
+COORDS_PRECISION vec3 decodeCoords(COORDS_PRECISION vec4 packed)
+{
+	COORDS_PRECISION vec2 uv = (packed.xz + packed.yw / 255.0) * 2.0;
+	return vec3(uv, step(0.75, packed.x));
+}
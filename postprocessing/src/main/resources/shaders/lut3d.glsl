@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+// 3D color luts are stored as a strip of size slices laid out horizontally
+// along the blue axis, each one holding red along the horizontal axis and
+// green along the vertical one: red and green are interpolated by the
+// hardware, blue between the two nearest slices
+
+// the strip is wide enough for mediump to miss the texel centers
+#if defined(GL_ES) && defined(GL_FRAGMENT_PRECISION_HIGH)
+	#define LUT_PRECISION highp
+#else
+	#define LUT_PRECISION PRECISION
+#endif
+
+vec3 lookupLut3D(sampler2D lut, vec3 color, float size)
+{
+	color = clamp(color, 0.0, 1.0);
+
+	LUT_PRECISION float blue = color.b * (size - 1.0);
+	LUT_PRECISION float slice = floor(blue);
+	LUT_PRECISION float next = min(slice + 1.0, size - 1.0);
+
+	// the texel centers of the first slice
+	LUT_PRECISION vec2 uv = vec2((color.r * (size - 1.0) + 0.5) / (size * size), (color.g * (size - 1.0) + 0.5) / size);
+
+	vec3 lo = texture2D(lut, vec2(uv.x + slice / size, uv.y)).rgb;
+	vec3 hi = texture2D(lut, vec2(uv.x + next / size, uv.y)).rgb;
+	return mix(lo, hi, blue - slice);
+}
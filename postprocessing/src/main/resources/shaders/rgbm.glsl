@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+// color values are stored in 8-bit buffers as RGBM, with
+// the alpha channel holding a shared multiplier
+const float RgbmRange = 8.0;
+
+vec4 encodeRgbm(vec3 color)
+{
+	color /= RgbmRange;
+	float m = clamp(max(max(color.r, color.g), max(color.b, 1e-6)), 0.0, 1.0);
+	m = ceil(m * 255.0) / 255.0;
+	return vec4(color / m, m);
+}
+
+vec3 decodeRgbm(vec4 rgbm)
+{
+	return rgbm.rgb * rgbm.a * RgbmRange;
+}
@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+// The constants 0.3, 0.59, and 0.11 are chosen because the
+// human eye is more sensitive to green light, and less to blue.
+const vec3 GRAYSCALE = vec3(0.3, 0.59, 0.11);
+
+// 0 = totally desaturated
+// 1 = saturation unchanged
+// higher = increase saturation
+vec3 adjustSaturation(vec3 color, float saturation)
+{
+	vec3 grey = vec3(dot(color, GRAYSCALE));
+	//vec3 grey = vec3((color.r+color.g+color.b)*0.333);	// simple
+	return mix(grey, color, saturation);
+}
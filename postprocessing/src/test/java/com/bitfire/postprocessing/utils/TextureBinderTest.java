@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.bitfire.postprocessing.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.Texture.TextureWrap;
+import com.badlogic.gdx.graphics.TextureData;
+
+/**
+ * Checks the {@link TextureBinder} skips redundant OpenGL calls, by counting the calls issued to a fake GL20
+ * implementation.
+ *
+ * @author bmanuel
+ */
+public class TextureBinderTest {
+	private CountingGL gl;
+	private Texture first, second;
+
+	@Before
+	public void setUp() {
+		gl = new CountingGL();
+		Gdx.gl20 = (GL20)Proxy.newProxyInstance( GL20.class.getClassLoader(), new Class<?>[] { GL20.class }, gl );
+		Gdx.gl = Gdx.gl20;
+
+		first = new Texture( new FakeTextureData() );
+		second = new Texture( new FakeTextureData() );
+
+		TextureBinder.invalidate();
+		gl.reset();
+	}
+
+	@After
+	public void tearDown() {
+		TextureBinder.invalidate();
+		Gdx.gl = null;
+		Gdx.gl20 = null;
+	}
+
+	@Test
+	public void bindSkipsRedundantCalls() {
+		TextureBinder.bind( first, 0 );
+		assertEquals( 1, gl.count( "glActiveTexture" ) );
+		assertEquals( 1, gl.count( "glBindTexture" ) );
+
+		TextureBinder.bind( first, 0 );
+		assertEquals( 1, gl.count( "glActiveTexture" ) );
+		assertEquals( 1, gl.count( "glBindTexture" ) );
+
+		// same unit, different texture: the active unit shall not change
+		TextureBinder.bind( second, 0 );
+		assertEquals( 1, gl.count( "glActiveTexture" ) );
+		assertEquals( 2, gl.count( "glBindTexture" ) );
+
+		// both units already hold the requested textures after the first bind
+		TextureBinder.bind( first, 1 );
+		TextureBinder.bind( second, 0 );
+		TextureBinder.bind( first, 1 );
+		assertEquals( 2, gl.count( "glActiveTexture" ) );
+		assertEquals( 3, gl.count( "glBindTexture" ) );
+	}
+
+	@Test
+	public void invalidateForcesBind() {
+		TextureBinder.bind( first, 0 );
+		TextureBinder.invalidate();
+		TextureBinder.bind( first, 0 );
+		assertEquals( 2, gl.count( "glActiveTexture" ) );
+		assertEquals( 2, gl.count( "glBindTexture" ) );
+	}
+
+	@Test
+	public void setWrapSkipsRedundantCalls() {
+		TextureBinder.setWrap( first, TextureWrap.Repeat, TextureWrap.Repeat );
+		assertEquals( 2, gl.count( "glTexParameterf" ) );
+		assertEquals( 1, gl.count( "glBindTexture" ) );
+
+		TextureBinder.setWrap( first, TextureWrap.Repeat, TextureWrap.Repeat );
+		assertEquals( 2, gl.count( "glTexParameterf" ) );
+		assertEquals( 1, gl.count( "glBindTexture" ) );
+
+		// the texture is still bound, only its parameters shall be updated
+		TextureBinder.setWrap( first, TextureWrap.ClampToEdge, TextureWrap.ClampToEdge );
+		assertEquals( 4, gl.count( "glTexParameterf" ) );
+		assertEquals( 1, gl.count( "glBindTexture" ) );
+		assertEquals( 1, gl.count( "glActiveTexture" ) );
+	}
+
+	@Test
+	public void setFilterSkipsRedundantCalls() {
+		TextureBinder.setFilter( first, TextureFilter.Linear, TextureFilter.Linear );
+		assertEquals( 2, gl.count( "glTexParameterf" ) );
+		assertEquals( 1, gl.count( "glBindTexture" ) );
+
+		TextureBinder.setFilter( first, TextureFilter.Linear, TextureFilter.Linear );
+		assertEquals( 2, gl.count( "glTexParameterf" ) );
+		assertEquals( 1, gl.count( "glBindTexture" ) );
+	}
+
+	@Test
+	public void forceAndInvalidateReissueCalls() {
+		TextureBinder.setFilter( first, TextureFilter.Linear, TextureFilter.Linear );
+		TextureBinder.invalidate();
+		TextureBinder.setFilter( first, TextureFilter.Linear, TextureFilter.Linear, true );
+		TextureBinder.setWrap( first, TextureWrap.ClampToEdge, TextureWrap.ClampToEdge, true );
+		assertEquals( 6, gl.count( "glTexParameterf" ) );
+		assertEquals( 2, gl.count( "glActiveTexture" ) );
+		assertEquals( 2, gl.count( "glBindTexture" ) );
+	}
+
+	/** Counts the calls by method name, handing out increasing texture names. */
+	private static final class CountingGL implements InvocationHandler {
+		private final Map<String, Integer> counts = new HashMap<String, Integer>();
+		private int nextHandle = 1;
+
+		public void reset() {
+			counts.clear();
+		}
+
+		public int count( String method ) {
+			Integer count = counts.get( method );
+			return count != null ? count : 0;
+		}
+
+		@Override
+		public Object invoke( Object proxy, Method method, Object[] args ) {
+			counts.put( method.getName(), count( method.getName() ) + 1 );
+
+			if( method.getName().equals( "glGenTextures" ) ) {
+				IntBuffer names = (IntBuffer)args[1];
+				for( int i = 0; i < (Integer)args[0]; i++ ) {
+					names.put( names.position() + i, nextHandle++ );
+				}
+			}
+
+			Class<?> type = method.getReturnType();
+			if( type == Integer.TYPE ) {
+				return 0;
+			} else if( type == Boolean.TYPE ) {
+				return false;
+			} else if( type == Float.TYPE ) {
+				return 0f;
+			}
+
+			return null;
+		}
+	}
+
+	/** Unmanaged texture data with nothing to upload, so that no native Pixmap is needed. */
+	private static final class FakeTextureData implements TextureData {
+		@Override
+		public TextureDataType getType() {
+			return TextureDataType.Compressed;
+		}
+
+		@Override
+		public boolean isPrepared() {
+			return true;
+		}
+
+		@Override
+		public void prepare() {
+		}
+
+		@Override
+		public Pixmap consumePixmap() {
+			return null;
+		}
+
+		@Override
+		public boolean disposePixmap() {
+			return false;
+		}
+
+		@Override
+		public void consumeCompressedData( int target ) {
+		}
+
+		@Override
+		public int getWidth() {
+			return 4;
+		}
+
+		@Override
+		public int getHeight() {
+			return 4;
+		}
+
+		@Override
+		public Format getFormat() {
+			return Format.RGBA8888;
+		}
+
+		@Override
+		public boolean useMipMaps() {
+			return false;
+		}
+
+		@Override
+		public boolean isManaged() {
+			return false;
+		}
+	}
+}
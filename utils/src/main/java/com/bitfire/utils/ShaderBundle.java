@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import com.badlogic.gdx.Files.FileType;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/**
+ * A set of shader sources packed into a single indexed file, so that they can be read with a single I/O operation and
+ * decoded at once, instead of looking up and decoding every file on its own. Assign a loaded bundle to
+ * {@link ShaderLoader#Bundle} to have the loader resolve sources from it.
+ * 
+ * The bundle is built at packaging time by running this class, see {@link #main(String[])}: the layout is a header
+ * (magic, version, entry count), an index of entries (name, offset and length in characters) and the UTF-8 encoded
+ * concatenation of all the sources.
+ * 
+ * @author bmanuel
+ */
+public final class ShaderBundle {
+	private static final int Magic = 0x53484442; // "SHDB"
+	private static final int Version = 1;
+	private static final Charset Utf8 = Charset.forName( "UTF-8" );
+	private static final String[] Extensions = { ".vertex", ".fragment", ".glsl" };
+
+	private final ObjectMap<String, String> sources;
+
+	private ShaderBundle( ObjectMap<String, String> sources ) {
+		this.sources = sources;
+	}
+
+	/** Returns the source for the specified file name, or null if the bundle doesn't contain it. */
+	public String get( String fileName ) {
+		return sources.get( fileName );
+	}
+
+	public int size() {
+		return sources.size;
+	}
+
+	/** Loads the bundle reading the whole file at once. */
+	public static ShaderBundle load( FileHandle file ) {
+		return load( file, false );
+	}
+
+	/**
+	 * Loads the bundle, memory-mapping the file if requested and if it can be mapped, ie. if it's a real file in the
+	 * filesystem as on the desktop, or reading the whole file at once otherwise, eg. for Android assets.
+	 */
+	public static ShaderBundle load( FileHandle file, boolean map ) {
+		if( map && file.type() != FileType.Classpath && file.file().isFile() ) {
+			RandomAccessFile raf = null;
+			try {
+				raf = new RandomAccessFile( file.file(), "r" );
+				FileChannel channel = raf.getChannel();
+				return parse( channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() ), file.path() );
+			} catch( IOException e ) {
+				throw new GdxRuntimeException( "Couldn't map shader bundle " + file.path(), e );
+			} finally {
+				if( raf != null ) {
+					try {
+						raf.close();
+					} catch( IOException e ) {
+					}
+				}
+			}
+		}
+
+		return parse( ByteBuffer.wrap( file.readBytes() ), file.path() );
+	}
+
+	private static ShaderBundle parse( ByteBuffer buffer, String path ) {
+		if( buffer.remaining() < 12 || buffer.getInt() != Magic ) {
+			throw new GdxRuntimeException( "Not a shader bundle: " + path );
+		}
+
+		int version = buffer.getInt();
+		if( version != Version ) {
+			throw new GdxRuntimeException( "Unsupported shader bundle version " + version + ": " + path );
+		}
+
+		int count = buffer.getInt();
+		String[] names = new String[ count ];
+		int[] offsets = new int[ count ];
+		int[] lengths = new int[ count ];
+
+		for( int i = 0; i < count; i++ ) {
+			byte[] name = new byte[ buffer.getShort() & 0xffff ];
+			buffer.get( name );
+			names[i] = new String( name, Utf8 );
+			offsets[i] = buffer.getInt();
+			lengths[i] = buffer.getInt();
+		}
+
+		// decode all the sources at once
+		String all = Utf8.decode( buffer.slice() ).toString();
+
+		ObjectMap<String, String> sources = new ObjectMap<String, String>( count );
+		for( int i = 0; i < count; i++ ) {
+			sources.put( names[i], all.substring( offsets[i], offsets[i] + lengths[i] ) );
+		}
+
+		return new ShaderBundle( sources );
+	}
+
+	/**
+	 * Packs the shader sources found in a directory into a bundle, invoked at build time.
+	 * 
+	 * Usage: ShaderBundle &lt;source directory&gt; &lt;output file&gt;
+	 */
+	public static void main( String[] args ) throws IOException {
+		if( args.length != 2 ) {
+			System.err.println( "Usage: ShaderBundle <source directory> <output file>" );
+			System.exit( 1 );
+		}
+
+		File dir = new File( args[0] );
+		File[] files = dir.listFiles();
+		if( files == null ) {
+			throw new IOException( "Not a directory: " + dir );
+		}
+
+		// sorted, so that the same sources always produce the same bundle
+		Arrays.sort( files );
+
+		int count = 0;
+		String[] names = new String[ files.length ];
+		StringBuilder all = new StringBuilder();
+		int[] offsets = new int[ files.length ];
+		int[] lengths = new int[ files.length ];
+
+		for( File f : files ) {
+			if( !f.isFile() || !isShaderSource( f.getName() ) ) {
+				continue;
+			}
+
+			String source = readFile( f );
+			names[count] = f.getName();
+			offsets[count] = all.length();
+			lengths[count] = source.length();
+			all.append( source );
+			count++;
+		}
+
+		DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( args[1] ) ) );
+		try {
+			out.writeInt( Magic );
+			out.writeInt( Version );
+			out.writeInt( count );
+
+			for( int i = 0; i < count; i++ ) {
+				byte[] name = names[i].getBytes( Utf8 );
+				out.writeShort( name.length );
+				out.write( name );
+				out.writeInt( offsets[i] );
+				out.writeInt( lengths[i] );
+			}
+
+			out.write( all.toString().getBytes( Utf8 ) );
+		} finally {
+			out.close();
+		}
+
+		System.out.println( "Packed " + count + " shader sources into " + args[1] );
+	}
+
+	private static boolean isShaderSource( String name ) {
+		for( String ext : Extensions ) {
+			if( name.endsWith( ext ) ) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static String readFile( File f ) throws IOException {
+		byte[] bytes = new byte[ (int)f.length() ];
+		FileInputStream in = new FileInputStream( f );
+		try {
+			int read = 0;
+			while( read < bytes.length ) {
+				int n = in.read( bytes, read, bytes.length - read );
+				if( n < 0 ) {
+					throw new IOException( "Unexpected end of file: " + f );
+				}
+
+				read += n;
+			}
+		} finally {
+			in.close();
+		}
+
+		return new String( bytes, Utf8 );
+	}
+}
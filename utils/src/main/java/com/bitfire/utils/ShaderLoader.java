@@ -18,28 +18,99 @@ package com.bitfire.utils;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ObjectSet;
 
+/**
+ * Loads and caches shader programs from files under {@link #BasePath}.
+ * 
+ * Sources loaded from files are run through a minimal preprocessor, resolving lines in the form
+ * <code>#include "file.glsl"</code> with the contents of the named file, also relative to BasePath: each file is
+ * included at most once per stage, so shared headers can be safely included by other includes. The directive is
+ * resolved textually, before the GLSL preprocessor runs, thus an include placed inside an <code>#ifdef</code> block
+ * counts as included even when the block is disabled.
+ * 
+ * If a {@link ShaderBundle} is assigned to {@link #Bundle}, sources are looked up in it first, by their file name
+ * relative to BasePath, falling back to the files only for those it doesn't contain.
+ * 
+ * Changing BasePath, Bundle or Pedantic makes the loader forget the programs built so far, so that programs are never
+ * handed out from sources or settings other than the current ones: the forgotten programs are still released as usual.
+ * 
+ * @author bmanuel
+ */
 public final class ShaderLoader {
 	public static String BasePath = "";
 	public static boolean Pedantic = true;
+	public static ShaderBundle Bundle = null;
+
+	/** A program shared by all the users asking for the same vertex, fragment and defines. */
+	private static final class CachedProgram {
+		final String key;
+		final ShaderProgram program;
+		int references;
+
+		CachedProgram( String key, ShaderProgram program ) {
+			this.key = key;
+			this.program = program;
+			this.references = 0;
+		}
+	}
+
+	private static final ObjectMap<String, CachedProgram> programs = new ObjectMap<String, CachedProgram>();
+	private static final ObjectMap<ShaderProgram, CachedProgram> cachedPrograms = new ObjectMap<ShaderProgram, CachedProgram>();
+	private static final String IncludeDirective = "#include";
+
+	// the settings the cached programs have been built with
+	private static String cachedBasePath = null;
+	private static ShaderBundle cachedBundle = null;
+	private static boolean cachedPedantic = true;
 
 	public static ShaderProgram fromFile( String vertexFileName, String fragmentFileName ) {
 		return ShaderLoader.fromFile( vertexFileName, fragmentFileName, "" );
 	}
 
 	public static ShaderProgram fromFile( String vertexFileName, String fragmentFileName, String defines ) {
-		String log = "\"" + vertexFileName + "/" + fragmentFileName + "\"";
-		if( defines.length() > 0 ) {
-			log += " w/ (" + defines.replace( "\n", ", " ) + ")";
-		}
-		log += "...";
-		Gdx.app.log( "ShaderLoader", "Compiling " + log );
+		return ShaderLoader.fromFile( vertexFileName, fragmentFileName, defines, defines );
+	}
+
+	/**
+	 * Builds a program with distinct defines for the vertex and fragment stages. Programs built with the same vertex
+	 * file and vertex defines submit the very same vertex source: pass the defines needed by the fragment program only
+	 * to fragmentDefines, so that drivers caching compiled shaders by their source can reuse the vertex stage.
+	 * 
+	 * Programs are cached: asking again for the same files and defines will return the very same program, without
+	 * compiling it again. Since the program is shared, uniform values set by one user could be overwritten by another
+	 * one, so users should be prepared to upload them again before using it. Every program obtained this way should be
+	 * disposed via {@link #release(ShaderProgram)}.
+	 * 
+	 * @throws GdxRuntimeException if the sources can't be read or the program can't be compiled.
+	 */
+	public static ShaderProgram fromFile( String vertexFileName, String fragmentFileName, String vertexDefines,
+			String fragmentDefines ) {
+		checkSettings();
+		String key = vertexFileName + "/" + fragmentFileName + "\n" + vertexDefines + "\n" + fragmentDefines;
+		CachedProgram cached = programs.get( key );
+
+		if( cached == null ) {
+			String log = "\"" + vertexFileName + "/" + fragmentFileName + "\"";
+			if( fragmentDefines.length() > 0 ) {
+				log += " w/ (" + fragmentDefines.replace( "\n", ", " ) + ")";
+			}
+			log += "...";
+			Gdx.app.log( "ShaderLoader", "Compiling " + log );
+
+			String vpSrc = load( vertexFileName + ".vertex" );
+			String fpSrc = load( fragmentFileName + ".fragment" );
+			ShaderProgram program = ShaderLoader.compile( vertexDefines + "\n" + vpSrc, fragmentDefines + "\n" + fpSrc );
 
-		String vpSrc = Gdx.files.internal( BasePath + vertexFileName + ".vertex" ).readString();
-		String fpSrc = Gdx.files.internal( BasePath + fragmentFileName + ".fragment" ).readString();
+			cached = new CachedProgram( key, program );
+			programs.put( key, cached );
+			cachedPrograms.put( program, cached );
+		}
 
-		ShaderProgram program = ShaderLoader.fromString( vpSrc, fpSrc, vertexFileName, fragmentFileName, defines );
-		return program;
+		cached.references++;
+		return cached.program;
 	}
 
 	public static ShaderProgram fromString( String vertex, String fragment, String vertexName, String fragmentName ) {
@@ -47,12 +118,93 @@ public final class ShaderLoader {
 	}
 
 	public static ShaderProgram fromString( String vertex, String fragment, String vertexName, String fragmentName, String defines ) {
+		return ShaderLoader.compile( defines + "\n" + vertex, defines + "\n" + fragment );
+	}
+
+	/**
+	 * Releases the specified program: cached programs are disposed only when they are not being used anymore, any other
+	 * program is disposed immediately.
+	 */
+	public static void release( ShaderProgram program ) {
+		CachedProgram cached = cachedPrograms.get( program );
+		if( cached == null ) {
+			program.dispose();
+			return;
+		}
+
+		cached.references--;
+		if( cached.references == 0 ) {
+			// a program built with other settings may be cached under the same key by now
+			if( programs.get( cached.key ) == cached ) {
+				programs.remove( cached.key );
+			}
+
+			cachedPrograms.remove( program );
+			program.dispose();
+		}
+	}
+
+	// forgets the programs built with settings other than the current ones, without disposing them
+	private static void checkSettings() {
+		if( BasePath.equals( cachedBasePath ) && Bundle == cachedBundle && Pedantic == cachedPedantic ) {
+			return;
+		}
+
+		programs.clear();
+		cachedBasePath = BasePath;
+		cachedBundle = Bundle;
+		cachedPedantic = Pedantic;
+	}
+
+	private static String load( String fileName ) {
+		StringBuilder out = new StringBuilder();
+		expand( fileName, new ObjectSet<String>(), out );
+		return out.toString();
+	}
+
+	// appends the file contents, replacing include directives with the contents of the
+	// files they refer to, if not already included
+	private static void expand( String fileName, ObjectSet<String> included, StringBuilder out ) {
+		included.add( fileName );
+
+		String source = Bundle != null ? Bundle.get( fileName ) : null;
+		if( source == null ) {
+			source = Gdx.files.internal( BasePath + fileName ).readString();
+		}
+
+		String[] lines = source.split( "\n", -1 );
+
+		for( int i = 0; i < lines.length; i++ ) {
+			String line = lines[i].trim();
+
+			if( line.startsWith( IncludeDirective ) ) {
+				String name = line.substring( IncludeDirective.length() ).trim();
+				if( name.length() < 2 || name.charAt( 0 ) != '"' || name.charAt( name.length() - 1 ) != '"' ) {
+					throw new GdxRuntimeException( "Malformed include directive at " + fileName + ":" + (i + 1) + ": "
+							+ line );
+				}
+
+				name = name.substring( 1, name.length() - 1 );
+				if( !included.contains( name ) ) {
+					expand( name, included, out );
+				}
+			} else {
+				out.append( lines[i] );
+			}
+
+			out.append( '\n' );
+		}
+	}
+
+	private static ShaderProgram compile( String vertex, String fragment ) {
 		ShaderProgram.pedantic = ShaderLoader.Pedantic;
-		ShaderProgram shader = new ShaderProgram( defines + "\n" + vertex, defines + "\n" + fragment );
+		ShaderProgram shader = new ShaderProgram( vertex, fragment );
 
 		if( !shader.isCompiled() ) {
-			Gdx.app.error( "ShaderLoader", shader.getLog() );
-			System.exit( -1 );
+			String log = shader.getLog();
+			Gdx.app.error( "ShaderLoader", log );
+			shader.dispose();
+			throw new GdxRuntimeException( "Couldn't compile shader program: " + log );
 		}
 
 		return shader;
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.utils;
+
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.IntMap;
+
+/**
+ * Describes the permutations of a shader program built from a vertex and a fragment file, in terms of a set of declared
+ * features: each feature is a boolean <code>#define</code> and is assigned a bit, so that any permutation can be
+ * identified by the bitmask of the features it enables.
+ * 
+ * The defines for a permutation are always emitted in the declaration order, no matter how the mask has been built,
+ * so that the same permutation will always produce the same {@link ShaderLoader} key and will never be compiled twice.
+ * Since permutations are just numbers, they can also be enumerated and precompiled via a {@link ShaderWarmup}.
+ * 
+ * @author bmanuel
+ */
+public final class ShaderVariants {
+	public final String vertexFileName, fragmentFileName;
+	private final String[] features;
+	private final IntMap<String> defines = new IntMap<String>();
+
+	/** Declares the features of the program, at most 31 of them, bit N being assigned to the Nth feature. */
+	public ShaderVariants( String vertexFileName, String fragmentFileName, String... features ) {
+		if( features.length > 31 ) {
+			throw new GdxRuntimeException( "Too many features for \"" + vertexFileName + "/" + fragmentFileName + "\"" );
+		}
+
+		this.vertexFileName = vertexFileName;
+		this.fragmentFileName = fragmentFileName;
+		this.features = features;
+	}
+
+	/** Returns the bit assigned to the specified feature. */
+	public int feature( String name ) {
+		for( int i = 0; i < features.length; i++ ) {
+			if( features[i].equals( name ) ) {
+				return 1 << i;
+			}
+		}
+
+		throw new GdxRuntimeException( "Unknown feature \"" + name + "\" for \"" + vertexFileName + "/" + fragmentFileName
+				+ "\"" );
+	}
+
+	/** Returns the number of possible permutations, all of the masks in [0, count) being valid. */
+	public int getPermutationCount() {
+		return 1 << features.length;
+	}
+
+	/** Returns the fragment program defines for the specified permutation. */
+	public String getDefines( int mask ) {
+		checkMask( mask );
+
+		String result = defines.get( mask );
+		if( result == null ) {
+			StringBuilder sb = new StringBuilder();
+			for( int i = 0; i < features.length; i++ ) {
+				if( (mask & (1 << i)) != 0 ) {
+					sb.append( "#define " ).append( features[i] ).append( '\n' );
+				}
+			}
+
+			result = sb.toString();
+			defines.put( mask, result );
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the program for the specified permutation, compiling it only if no one is using it yet: it should be
+	 * disposed via {@link ShaderLoader#release(ShaderProgram)}.
+	 */
+	public ShaderProgram get( int mask ) {
+		return ShaderLoader.fromFile( vertexFileName, fragmentFileName, "", getDefines( mask ) );
+	}
+
+	/** Enqueues the specified permutation for warm-up. */
+	public void enqueue( ShaderWarmup warmup, int mask ) {
+		warmup.add( vertexFileName, fragmentFileName, "", getDefines( mask ) );
+	}
+
+	/** Enqueues every possible permutation for warm-up. */
+	public void enqueueAll( ShaderWarmup warmup ) {
+		for( int mask = 0; mask < getPermutationCount(); mask++ ) {
+			enqueue( warmup, mask );
+		}
+	}
+
+	private void checkMask( int mask ) {
+		if( mask < 0 || mask >= getPermutationCount() ) {
+			throw new GdxRuntimeException( "Invalid permutation " + mask + " for \"" + vertexFileName + "/"
+					+ fragmentFileName + "\"" );
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.utils;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectSet;
+import com.badlogic.gdx.utils.TimeUtils;
+
+/**
+ * Compiles ahead of time the programs that will be needed later on, a few at a time, so that the work can be spread
+ * over several frames, eg. while showing a loading screen.
+ * 
+ * Programs are compiled via the {@link ShaderLoader} cache and kept alive by this object until it gets disposed: any
+ * filter constructed in the meantime asking for the same program will find it already compiled. Dispose this object
+ * only after the filters needing the programs have been constructed.
+ * 
+ * Compilation errors don't stop the warm-up, they are collected and can be retrieved via {@link #getErrors()}.
+ * 
+ * @author bmanuel
+ */
+public final class ShaderWarmup implements Disposable {
+
+	private static final class Entry {
+		final String vertexFileName, fragmentFileName;
+		final String vertexDefines, fragmentDefines;
+
+		Entry( String vertexFileName, String fragmentFileName, String vertexDefines, String fragmentDefines ) {
+			this.vertexFileName = vertexFileName;
+			this.fragmentFileName = fragmentFileName;
+			this.vertexDefines = vertexDefines;
+			this.fragmentDefines = fragmentDefines;
+		}
+
+		@Override
+		public String toString() {
+			String name = "\"" + vertexFileName + "/" + fragmentFileName + "\"";
+			if( fragmentDefines.length() > 0 ) {
+				name += " w/ (" + fragmentDefines.replace( "\n", ", " ) + ")";
+			}
+			return name;
+		}
+	}
+
+	private final Array<Entry> queue = new Array<Entry>();
+	private final ObjectSet<String> enqueued = new ObjectSet<String>();
+	private final Array<ShaderProgram> programs = new Array<ShaderProgram>();
+	private final Array<String> errors = new Array<String>();
+	private int processed = 0;
+
+	/** Enqueues the specified program, see {@link ShaderLoader#fromFile(String, String, String, String)}. */
+	public void add( String vertexFileName, String fragmentFileName, String vertexDefines, String fragmentDefines ) {
+		String key = vertexFileName + "/" + fragmentFileName + "\n" + vertexDefines + "\n" + fragmentDefines;
+		if( enqueued.contains( key ) ) {
+			return;
+		}
+
+		enqueued.add( key );
+		queue.add( new Entry( vertexFileName, fragmentFileName, vertexDefines, fragmentDefines ) );
+	}
+
+	/** Enqueues the specified program, see {@link ShaderLoader#fromFile(String, String, String)}. */
+	public void add( String vertexFileName, String fragmentFileName, String defines ) {
+		add( vertexFileName, fragmentFileName, defines, defines );
+	}
+
+	/** Enqueues the specified program, see {@link ShaderLoader#fromFile(String, String)}. */
+	public void add( String vertexFileName, String fragmentFileName ) {
+		add( vertexFileName, fragmentFileName, "", "" );
+	}
+
+	/**
+	 * Compiles the enqueued programs until the specified time budget is exhausted: at least one program is compiled
+	 * on each call, if any is left.
+	 * 
+	 * @return true if all the programs have been processed.
+	 */
+	public boolean update( float budgetMillis ) {
+		long start = TimeUtils.nanoTime();
+		long budget = (long)(budgetMillis * 1000000f);
+
+		while( processed < queue.size ) {
+			compile( queue.get( processed++ ) );
+
+			if( TimeUtils.nanoTime() - start >= budget ) {
+				break;
+			}
+		}
+
+		return isDone();
+	}
+
+	/** Compiles one program per call, if any is left. */
+	public boolean update() {
+		return update( 0 );
+	}
+
+	/** Compiles all the remaining programs at once. */
+	public void finish() {
+		update( Float.MAX_VALUE );
+	}
+
+	/** Returns whether or not all the enqueued programs have been processed. */
+	public boolean isDone() {
+		return processed == queue.size;
+	}
+
+	/** Returns the progress in the [0,1] range. */
+	public float getProgress() {
+		if( queue.size == 0 ) {
+			return 1f;
+		}
+
+		return (float)processed / (float)queue.size;
+	}
+
+	/** Returns the number of programs left to compile. */
+	public int getRemaining() {
+		return queue.size - processed;
+	}
+
+	public boolean hasErrors() {
+		return errors.size > 0;
+	}
+
+	/** Returns a description of any program that failed to compile, in the order they were processed. */
+	public Array<String> getErrors() {
+		return errors;
+	}
+
+	/** Releases the compiled programs, the ones being used by any filter will stay alive. */
+	@Override
+	public void dispose() {
+		for( int i = 0; i < programs.size; i++ ) {
+			ShaderLoader.release( programs.get( i ) );
+		}
+
+		programs.clear();
+		queue.clear();
+		enqueued.clear();
+		processed = 0;
+	}
+
+	private void compile( Entry entry ) {
+		try {
+			programs.add( ShaderLoader.fromFile( entry.vertexFileName, entry.fragmentFileName, entry.vertexDefines,
+					entry.fragmentDefines ) );
+		} catch( GdxRuntimeException e ) {
+			String error = entry.toString() + ": " + e.getMessage();
+			Gdx.app.error( "ShaderWarmup", error );
+			errors.add( error );
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.bitfire.utils;
+
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * A summed-area table of a single channel image, each entry holding the sum of all the values above and to the left
+ * of it, itself included: the sum of any rectangle can then be obtained in constant time by looking up its four
+ * corners. Sums are kept in double precision, so this can serve as the reference to verify GPU implementations
+ * against.
+ * 
+ * @author bmanuel
+ */
+public final class SummedAreaTable {
+	private final int width, height;
+	private final double[] table;
+
+	/** Builds the table for the specified values, stored by rows starting from the top-left one. */
+	public SummedAreaTable( float[] values, int width, int height ) {
+		if( values.length < width * height ) {
+			throw new GdxRuntimeException( "Expected " + (width * height) + " values, got " + values.length );
+		}
+
+		this.width = width;
+		this.height = height;
+		this.table = new double[ width * height ];
+
+		for( int y = 0; y < height; y++ ) {
+			double row = 0;
+			for( int x = 0; x < width; x++ ) {
+				int i = y * width + x;
+				row += values[i];
+				table[i] = row + (y > 0 ? table[i - width] : 0);
+			}
+		}
+	}
+
+	/** Returns the sum of the values in the rectangle between the specified texels, inclusive, clamped to the image. */
+	public double sum( int x0, int y0, int x1, int y1 ) {
+		x0 = Math.max( x0, 0 );
+		y0 = Math.max( y0, 0 );
+		x1 = Math.min( x1, width - 1 );
+		y1 = Math.min( y1, height - 1 );
+
+		if( x0 > x1 || y0 > y1 ) {
+			return 0;
+		}
+
+		double s = at( x1, y1 );
+		s -= at( x0 - 1, y1 );
+		s -= at( x1, y0 - 1 );
+		s += at( x0 - 1, y0 - 1 );
+		return s;
+	}
+
+	/**
+	 * Returns the average of the values in the box centered on the specified texel, extending the specified number of
+	 * texels on each side: the box is clamped to the image, only the texels inside it being averaged.
+	 */
+	public float average( int x, int y, int radiusX, int radiusY ) {
+		int x0 = Math.max( x - radiusX, 0 ), y0 = Math.max( y - radiusY, 0 );
+		int x1 = Math.min( x + radiusX, width - 1 ), y1 = Math.min( y + radiusY, height - 1 );
+		int count = (x1 - x0 + 1) * (y1 - y0 + 1);
+		return (float)(sum( x0, y0, x1, y1 ) / count);
+	}
+
+	/** Box-blurs the specified values, returning a new image of the same size, see {@link #average(int, int, int, int)}. */
+	public static float[] boxBlur( float[] values, int width, int height, int radiusX, int radiusY ) {
+		SummedAreaTable sat = new SummedAreaTable( values, width, height );
+		float[] result = new float[ width * height ];
+
+		for( int y = 0; y < height; y++ ) {
+			for( int x = 0; x < width; x++ ) {
+				result[y * width + x] = sat.average( x, y, radiusX, radiusY );
+			}
+		}
+
+		return result;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	// the texels before the first row or column sum to zero
+	private double at( int x, int y ) {
+		if( x < 0 || y < 0 ) {
+			return 0;
+		}
+
+		return table[y * width + x];
+	}
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright 2012 bmanuel
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.bitfire.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the {@link SummedAreaTable} against brute-force box averages, and the corner lookups done by the
+ * summed-area.fragment shader against the table.
+ * 
+ * @author bmanuel
+ */
+public class SummedAreaTableTest {
+	private static final int Width = 13, Height = 9;
+	private static final float Epsilon = 1e-4f;
+
+	// @formatter:off
+	private static final int[][] Radii = {
+		{ 0, 0 },
+		{ 1, 1 },
+		{ 1, 3 },
+		{ 4, 2 },
+		{ 20, 20 },	// larger than the image
+	};
+	// @formatter:on
+
+	@Test
+	public void boxBlurMatchesBruteForce() {
+		float[] values = randomImage();
+
+		for( int[] r : Radii ) {
+			float[] blurred = SummedAreaTable.boxBlur( values, Width, Height, r[0], r[1] );
+			for( int y = 0; y < Height; y++ ) {
+				for( int x = 0; x < Width; x++ ) {
+					assertEquals( "texel " + x + "," + y + ", radius " + r[0] + "x" + r[1],
+							bruteForceAverage( values, x, y, r[0], r[1] ), blurred[y * Width + x], Epsilon );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void zeroRadiusKeepsValues() {
+		float[] values = randomImage();
+		float[] blurred = SummedAreaTable.boxBlur( values, Width, Height, 0, 0 );
+
+		for( int i = 0; i < values.length; i++ ) {
+			assertEquals( values[i], blurred[i], Epsilon );
+		}
+	}
+
+	@Test
+	public void shaderLookupsMatchBruteForce() {
+		float[] values = randomImage();
+		SummedAreaTable sat = new SummedAreaTable( values, Width, Height );
+
+		for( int[] r : Radii ) {
+			for( int y = 0; y < Height; y++ ) {
+				for( int x = 0; x < Width; x++ ) {
+					assertEquals( "texel " + x + "," + y + ", radius " + r[0] + "x" + r[1],
+							bruteForceAverage( values, x, y, r[0], r[1] ), shaderAverage( sat, x, y, r[0], r[1] ), Epsilon );
+				}
+			}
+		}
+	}
+
+	private static float[] randomImage() {
+		Random random = new Random( 1234 );
+		float[] values = new float[ Width * Height ];
+		for( int i = 0; i < values.length; i++ ) {
+			values[i] = random.nextFloat();
+		}
+
+		return values;
+	}
+
+	private static float bruteForceAverage( float[] values, int x, int y, int radiusX, int radiusY ) {
+		double sum = 0;
+		int count = 0;
+
+		for( int j = y - radiusY; j <= y + radiusY; j++ ) {
+			for( int i = x - radiusX; i <= x + radiusX; i++ ) {
+				if( i >= 0 && i < Width && j >= 0 && j < Height ) {
+					sum += values[j * Width + i];
+					count++;
+				}
+			}
+		}
+
+		return (float)(sum / count);
+	}
+
+	// mirrors the SAMPLE_BOX path of summed-area.fragment, as set up by SummedAreaBlur, the table being sampled with
+	// nearest filtering and clamped to the edges
+	private static float shaderAverage( SummedAreaTable sat, int x, int y, int radiusX, int radiusY ) {
+		float texelX = 1f / Width, texelY = 1f / Height;
+		float u = (x + 0.5f) * texelX, v = (y + 0.5f) * texelY;
+		float radiusU = radiusX * texelX, radiusV = radiusY * texelY;
+
+		float hiU = Math.min( u + radiusU, 1f - texelX * 0.5f );
+		float hiV = Math.min( v + radiusV, 1f - texelY * 0.5f );
+		float loU = Math.max( u - radiusU - texelX, -texelX * 0.5f );
+		float loV = Math.max( v - radiusV - texelY, -texelY * 0.5f );
+
+		float insideU = (loU >= 0 ? 1 : 0), insideV = (loV >= 0 ? 1 : 0);
+
+		double sum = lookup( sat, hiU, hiV );
+		sum -= lookup( sat, loU, hiV ) * insideU;
+		sum -= lookup( sat, hiU, loV ) * insideV;
+		sum += lookup( sat, loU, loV ) * (insideU * insideV);
+
+		float sizeU = (hiU - loU) / texelX, sizeV = (hiV - loV) / texelY;
+		return (float)(sum / (sizeU * sizeV));
+	}
+
+	// the table entry at the specified texture coordinates, the entry of a texel being the sum of the rectangle
+	// between the first texel and itself
+	private static double lookup( SummedAreaTable sat, float u, float v ) {
+		int x = Math.max( 0, Math.min( (int)Math.floor( u * Width ), Width - 1 ) );
+		int y = Math.max( 0, Math.min( (int)Math.floor( v * Height ), Height - 1 ) );
+		return sat.sum( 0, 0, x, y );
+	}
+}